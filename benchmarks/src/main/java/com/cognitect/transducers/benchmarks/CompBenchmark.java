@@ -0,0 +1,86 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.ITransducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * Cost of composition depth. Builds a chain of depth stages with
+ * ITransducer.comp, alternating map and filter, and compares it with a
+ * Stream of the same shape. Depth 1 is the shallow baseline. Adjacent
+ * map and filter stages are fused by comp; see FusionBenchmark for the
+ * same chains with fusion defeated.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class CompBenchmark {
+
+    @Param({"1", "2", "4", "8", "16"})
+    public int depth;
+
+    private ITransducer<Integer, Integer> xf;
+
+    @Setup
+    public void setup() {
+        xf = stage(0);
+        for (int i = 1; i < depth; i++) {
+            xf = xf.comp(stage(i));
+        }
+    }
+
+    private static ITransducer<Integer, Integer> stage(int i) {
+        if ((i & 1) == 0)
+            return map(x -> x + 1);
+        return filter(x -> x != -1);
+    }
+
+    @Benchmark
+    public Blackhole compTransduce(Inputs in, Blackhole bh) {
+        return transduce(xf, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void compStream(Inputs in, Blackhole bh) {
+        Stream<Integer> s = in.ints.stream();
+        for (int i = 0; i < depth; i++) {
+            if ((i & 1) == 0)
+                s = s.map(x -> x + 1);
+            else
+                s = s.filter(x -> x != -1);
+        }
+        s.forEach(bh::consume);
+    }
+}
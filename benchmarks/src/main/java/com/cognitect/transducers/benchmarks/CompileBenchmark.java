@@ -0,0 +1,86 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.Fns;
+import com.cognitect.transducers.ITransducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * A pipeline of stateful stages, as built and as compiled by Fns#compile,
+ * after the same stage classes have been run in several other pipelines so
+ * that the calls from each stage to the next have seen many receiver
+ * classes, as in an application with many pipelines.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class CompileBenchmark {
+
+    ITransducer<Integer, Integer> xf;
+    ITransducer<Integer, Integer> compiled;
+
+    static ITransducer<Integer, Integer> pipeline() {
+        return Fns.<Integer>dropWhile(i -> i < 0)
+                .comp(Fns.<Integer>takeWhile(i -> i >= 0))
+                .comp(Fns.<Integer>dedupe())
+                .comp(Fns.<Integer>drop(1));
+    }
+
+    @Setup
+    public void setup(Inputs in, Blackhole bh) {
+        xf = pipeline();
+        compiled = Fns.compile(pipeline());
+        List<ITransducer<Integer, Integer>> others = new ArrayList<>();
+        others.add(Fns.<Integer>takeWhile(i -> i >= 0).comp(Fns.<Integer>dropWhile(i -> i < 0)));
+        others.add(Fns.<Integer>dedupe().comp(Fns.<Integer>takeWhile(i -> i >= 0)).comp(Fns.<Integer>drop(2)));
+        others.add(Fns.<Integer>drop(1).comp(Fns.<Integer>dedupe()).comp(Fns.<Integer>dropWhile(i -> i < 0)));
+        others.add(Fns.<Integer>dropWhile(i -> i < 0).comp(Fns.<Integer>drop(1)).comp(Fns.<Integer>takeWhile(i -> i >= 0)));
+        others.add(Fns.<Integer>takeWhile(i -> i >= 0).comp(Fns.<Integer>dedupe()).comp(Fns.<Integer>take(Long.MAX_VALUE)));
+        for (int round = 0; round < 200; round++) {
+            for (ITransducer<Integer, Integer> other : others)
+                transduce(other, new Sink<Integer>(), bh, in.ints);
+        }
+    }
+
+    @Benchmark
+    public Blackhole composed(Inputs in, Blackhole bh) {
+        return transduce(xf, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole compiled(Inputs in, Blackhole bh) {
+        return transduce(compiled, new Sink<Integer>(), bh, in.ints);
+    }
+}
@@ -0,0 +1,243 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.Fns;
+import com.cognitect.transducers.ITransducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * Throughput of each transducer in Fns, paired with the closest
+ * java.util.stream pipeline over the same input. Both sides of a pair
+ * end in the same Blackhole sink, so the difference is the cost of the
+ * transformation itself. Run with -prof gc to get allocation rates.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FnsBenchmark {
+
+    private static final ITransducer<Integer, Integer> inc = map(i -> i + 1);
+    private static final ITransducer<Integer, Integer> evens = filter(i -> (i & 1) == 0);
+    private static final ITransducer<Integer, Integer> odds = remove(i -> (i & 1) == 0);
+    private static final ITransducer<Integer, Integer> keepEvens = keep(i -> (i & 1) == 0 ? i : null);
+    private static final ITransducer<Integer, List<Integer>> cat = cat();
+    private static final ITransducer<Integer, Integer> twice = mapcat(i -> {
+        List<Integer> l = new ArrayList<>(2);
+        l.add(i);
+        l.add(i);
+        return l;
+    });
+    private static final ITransducer<Iterable<Integer>, Integer> chunks = partitionAll(32);
+    private static final ITransducer<Iterable<Integer>, Integer> runs = partitionBy(i -> i);
+    private static final ITransducer<String, Integer> pipeline =
+            filter((Integer i) -> (i & 1) == 0).comp(map(i -> i * 3)).comp(take(Long.MAX_VALUE)).comp(map(i -> i.toString()));
+
+    private static int half(Inputs in) {
+        return in.size / 2;
+    }
+
+    // *** map
+
+    @Benchmark
+    public Blackhole mapTransduce(Inputs in, Blackhole bh) {
+        return transduce(inc, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void mapStream(Inputs in, Blackhole bh) {
+        in.ints.stream().map(i -> i + 1).forEach(bh::consume);
+    }
+
+    // *** filter / remove / keep
+
+    @Benchmark
+    public Blackhole filterTransduce(Inputs in, Blackhole bh) {
+        return transduce(evens, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void filterStream(Inputs in, Blackhole bh) {
+        in.ints.stream().filter(i -> (i & 1) == 0).forEach(bh::consume);
+    }
+
+    @Benchmark
+    public Blackhole removeTransduce(Inputs in, Blackhole bh) {
+        return transduce(odds, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole keepTransduce(Inputs in, Blackhole bh) {
+        return transduce(keepEvens, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void keepStream(Inputs in, Blackhole bh) {
+        in.ints.stream().map(i -> (i & 1) == 0 ? i : null).filter(i -> i != null).forEach(bh::consume);
+    }
+
+    // *** cat / mapcat
+
+    @Benchmark
+    public Blackhole catTransduce(Inputs in, Blackhole bh) {
+        return transduce(cat, new Sink<Integer>(), bh, in.nested);
+    }
+
+    @Benchmark
+    public void catStream(Inputs in, Blackhole bh) {
+        in.nested.stream().flatMap(List::stream).forEach(bh::consume);
+    }
+
+    @Benchmark
+    public Blackhole mapcatTransduce(Inputs in, Blackhole bh) {
+        return transduce(twice, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void mapcatStream(Inputs in, Blackhole bh) {
+        in.ints.stream().flatMap(i -> {
+            List<Integer> l = new ArrayList<>(2);
+            l.add(i);
+            l.add(i);
+            return l.stream();
+        }).forEach(bh::consume);
+    }
+
+    // *** take / drop / takeWhile / dropWhile / takeNth
+
+    @Benchmark
+    public Blackhole takeTransduce(Inputs in, Blackhole bh) {
+        return transduce(Fns.<Integer>take(half(in)), new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void takeStream(Inputs in, Blackhole bh) {
+        in.ints.stream().limit(half(in)).forEach(bh::consume);
+    }
+
+    @Benchmark
+    public Blackhole dropTransduce(Inputs in, Blackhole bh) {
+        return transduce(Fns.<Integer>drop(half(in)), new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void dropStream(Inputs in, Blackhole bh) {
+        in.ints.stream().skip(half(in)).forEach(bh::consume);
+    }
+
+    /** Stream.takeWhile needs Java 9, so this one has no stream baseline. */
+    @Benchmark
+    public Blackhole takeWhileTransduce(Inputs in, Blackhole bh) {
+        final int h = half(in);
+        return transduce(takeWhile((Integer i) -> i < h), new Sink<Integer>(), bh, in.ints);
+    }
+
+    /** Stream.dropWhile needs Java 9, so this one has no stream baseline. */
+    @Benchmark
+    public Blackhole dropWhileTransduce(Inputs in, Blackhole bh) {
+        final int h = half(in);
+        return transduce(dropWhile((Integer i) -> i < h), new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole takeNthTransduce(Inputs in, Blackhole bh) {
+        return transduce(takeNth(3), new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void takeNthStream(Inputs in, Blackhole bh) {
+        IntStream.range(0, in.size).filter(i -> i % 3 == 0).mapToObj(in.ints::get).forEach(bh::consume);
+    }
+
+    // *** dedupe / partitionBy / partitionAll
+
+    @Benchmark
+    public Blackhole dedupeTransduce(Inputs in, Blackhole bh) {
+        return transduce(dedupe(), new Sink<Integer>(), bh, in.runs);
+    }
+
+    @Benchmark
+    public void dedupeStream(Inputs in, Blackhole bh) {
+        in.runs.stream().filter(new Predicate<Integer>() {
+            Integer prior = null;
+            @Override
+            public boolean test(Integer i) {
+                boolean keep = prior != i;
+                prior = i;
+                return keep;
+            }
+        }).forEach(bh::consume);
+    }
+
+    /** No stream equivalent exists for partitionBy. */
+    @Benchmark
+    public Blackhole partitionByTransduce(Inputs in, Blackhole bh) {
+        return transduce(runs, new Sink<Iterable<Integer>>(), bh, in.runs);
+    }
+
+    @Benchmark
+    public Blackhole partitionAllTransduce(Inputs in, Blackhole bh) {
+        return transduce(chunks, new Sink<Iterable<Integer>>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void partitionAllStream(Inputs in, Blackhole bh) {
+        final List<Integer> ints = in.ints;
+        final int n = 32;
+        IntStream.range(0, (ints.size() + n - 1) / n)
+                .mapToObj(i -> new ArrayList<>(ints.subList(i * n, Math.min(ints.size(), (i + 1) * n))))
+                .forEach(bh::consume);
+    }
+
+    // *** into / composed pipeline
+
+    @Benchmark
+    public List<Integer> intoTransduce(Inputs in) {
+        return into(inc, new ArrayList<Integer>(), in.ints);
+    }
+
+    @Benchmark
+    public List<Integer> intoStream(Inputs in) {
+        return in.ints.stream().map(i -> i + 1).collect(Collectors.toList());
+    }
+
+    @Benchmark
+    public Blackhole pipelineTransduce(Inputs in, Blackhole bh) {
+        return transduce(pipeline, new Sink<String>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public void pipelineStream(Inputs in, Blackhole bh) {
+        in.ints.stream().filter(i -> (i & 1) == 0).map(i -> i * 3).limit(Long.MAX_VALUE).map(i -> i.toString()).forEach(bh::consume);
+    }
+}
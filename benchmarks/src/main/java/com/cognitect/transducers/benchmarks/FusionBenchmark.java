@@ -0,0 +1,125 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.IReducingFunction;
+import com.cognitect.transducers.ITransducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * Effect of fusing adjacent map/filter/remove/keep stages. fused composes
+ * the stages from Fns directly, so ITransducer.comp collapses them into a
+ * single reducing function. unfused wraps every stage in an opaque
+ * transducer first, which rebuilds the former one-hop-per-stage chain.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class FusionBenchmark {
+
+    @Param({"2", "4", "8", "12"})
+    public int depth;
+
+    /**
+     * When true, setup first runs pipelines built from other lambdas, so the
+     * call sites shared by all pipelines are megamorphic, as they are in an
+     * application with many different pipelines.
+     */
+    @Param({"false", "true"})
+    public boolean polluted;
+
+    private ITransducer<Integer, Integer> fused;
+    private ITransducer<Integer, Integer> unfused;
+
+    @Setup
+    public void setup(Inputs in) {
+        if (polluted)
+            pollute(in);
+        fused = stage(0);
+        unfused = opaque(stage(0));
+        for (int i = 1; i < depth; i++) {
+            fused = fused.comp(stage(i));
+            unfused = unfused.comp(opaque(stage(i)));
+        }
+    }
+
+    private static ITransducer<Integer, Integer> stage(int i) {
+        switch (i % 4) {
+            case 0: return map(x -> x + 1);
+            case 1: return filter(x -> x != -1);
+            case 2: return keep(x -> x);
+            default: return remove(x -> x == -1);
+        }
+    }
+
+    private static void pollute(Inputs in) {
+        List<ITransducer<Integer, Integer>> others = new ArrayList<>();
+        others.add(map(x -> x - 1));
+        others.add(map(x -> x * 2));
+        others.add(filter(x -> x > 0));
+        others.add(filter(x -> (x & 3) != 0));
+        others.add(keep(x -> x < 0 ? null : x));
+        others.add(remove(x -> x == 7));
+        Blackhole bh = new Blackhole("Today's password is swordfish. I understand instantiating Blackholes directly is dangerous.");
+        for (int round = 0; round < 20; round++) {
+            for (int i = 0; i < others.size(); i++) {
+                ITransducer<Integer, Integer> a = others.get(i);
+                ITransducer<Integer, Integer> b = others.get((i + round) % others.size());
+                ITransducer<Integer, Integer> c = others.get((i + 2 * round + 1) % others.size());
+                transduce(a.comp(b).comp(c).comp(a), new Sink<Integer>(), bh, in.ints);
+                transduce(opaque(a).comp(opaque(b)).comp(opaque(c)).comp(opaque(a)), new Sink<Integer>(), bh, in.ints);
+            }
+        }
+    }
+
+    private static <A, B> ITransducer<A, B> opaque(final ITransducer<A, B> xf) {
+        return new ITransducer<A, B>() {
+            @Override
+            public <R> IReducingFunction<R, B> apply(IReducingFunction<R, ? super A> rf) {
+                return xf.apply(rf);
+            }
+        };
+    }
+
+    @Benchmark
+    public Blackhole fused(Inputs in, Blackhole bh) {
+        return transduce(fused, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole unfused(Inputs in, Blackhole bh) {
+        return transduce(unfused, new Sink<Integer>(), bh, in.ints);
+    }
+}
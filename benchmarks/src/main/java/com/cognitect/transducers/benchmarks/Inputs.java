@@ -0,0 +1,60 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Shared benchmark inputs, built once per trial for each input size.
+ */
+@State(Scope.Benchmark)
+public class Inputs {
+
+    @Param({"100", "10000", "1000000"})
+    public int size;
+
+    /** 0 .. size-1 */
+    public List<Integer> ints;
+
+    /** size/10 lists of 10 ints each, for cat and mapcat */
+    public List<List<Integer>> nested;
+
+    /**
+     * ints where every value repeats 4 times in a row, the same boxed
+     * instance each time, for dedupe, which compares by identity, and
+     * partitionBy
+     */
+    public List<Integer> runs;
+
+    @Setup
+    public void setup() {
+        ints = new ArrayList<>(size);
+        runs = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            ints.add(i);
+            runs.add(ints.get(i / 4));
+        }
+        nested = new ArrayList<>(size / 10);
+        for (int i = 0; i < size; i += 10) {
+            nested.add(ints.subList(i, Math.min(size, i + 10)));
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.AReducingFunction;
+import com.cognitect.transducers.Chunk;
+import com.cognitect.transducers.Fns;
+import com.cognitect.transducers.ITransducer;
+import com.cognitect.transducers.Reduced;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * Batching cost of partitionAll, which hands each filled ArrayList
+ * downstream, against chunked, which fills exactly sized array-backed
+ * chunks, with and without recycling released chunks. Run with
+ * -prof gc to compare allocation per reduction.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Benchmark)
+public class PartitionBenchmark {
+
+    @Param({"16", "256"})
+    public int n;
+
+    @Benchmark
+    public Blackhole partitionAll(Inputs in, Blackhole bh) {
+        ITransducer<Iterable<Integer>, Integer> xf = Fns.partitionAll(n);
+        return transduce(xf, new Sink<Iterable<Integer>>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole chunked(Inputs in, Blackhole bh) {
+        ITransducer<Chunk<Integer>, Integer> xf = Fns.chunked(n);
+        return transduce(xf, new Sink<Chunk<Integer>>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole pooled(Inputs in, Blackhole bh) {
+        ITransducer<Chunk<Integer>, Integer> xf = Fns.chunked(n, 1);
+        return transduce(xf, new AReducingFunction<Blackhole, Chunk<Integer>>() {
+            @Override
+            public Blackhole apply(Blackhole bh, Chunk<Integer> input, Reduced reduced) {
+                bh.consume(input);
+                input.release();
+                return bh;
+            }
+        }, bh, in.ints);
+    }
+}
@@ -0,0 +1,157 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.IReducingFunction;
+import com.cognitect.transducers.ITransducer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * Per-element cost of the early termination signal. The atomic benchmark
+ * reproduces the former protocol: stages written against
+ * IStepFunction#apply(Object, Object, AtomicBoolean), driven by a loop that
+ * reads the AtomicBoolean after every step. The plain benchmark runs the
+ * same map/filter/take pipeline from Fns, which passes a Reduced flag.
+ * Reported in nanoseconds per reduction; divide by size for the cost of
+ * one element.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+public class ReducedBenchmark {
+
+    private static final Function<Integer, Integer> inc = i -> i + 1;
+    private static final Predicate<Integer> even = i -> (i & 1) == 0;
+    private static final ITransducer<Integer, Integer> plain = map(inc).comp(filter(even)).comp(take(Long.MAX_VALUE));
+
+    @Benchmark
+    public Blackhole plain(Inputs in, Blackhole bh) {
+        return transduce(plain, new Sink<Integer>(), bh, in.ints);
+    }
+
+    @Benchmark
+    public Blackhole atomic(Inputs in, Blackhole bh) {
+        IReducingFunction<Blackhole, Integer> f = new AtomicMap(new AtomicFilter(new AtomicTake(new AtomicSink())));
+        Blackhole ret = bh;
+        AtomicBoolean reduced = new AtomicBoolean();
+        for (Integer i : in.ints) {
+            ret = f.apply(ret, i, reduced);
+            if (reduced.get())
+                break;
+        }
+        return f.apply(ret);
+    }
+
+    /**
+     * A stage of the former protocol, chaining to rf. Implements
+     * IReducingFunction directly, since AReducingFunctionOn now requires the
+     * Reduced overload.
+     */
+    abstract static class AtomicOn implements IReducingFunction<Blackhole, Integer> {
+        final IReducingFunction<Blackhole, ? super Integer> rf;
+
+        AtomicOn(IReducingFunction<Blackhole, ? super Integer> rf) {
+            this.rf = rf;
+        }
+
+        @Override
+        public Blackhole apply() {
+            return rf.apply();
+        }
+
+        @Override
+        public Blackhole apply(Blackhole result) {
+            return rf.apply(result);
+        }
+    }
+
+    static final class AtomicMap extends AtomicOn {
+        AtomicMap(IReducingFunction<Blackhole, ? super Integer> rf) {
+            super(rf);
+        }
+
+        @Override
+        public Blackhole apply(Blackhole result, Integer input, AtomicBoolean reduced) {
+            return rf.apply(result, inc.apply(input), reduced);
+        }
+    }
+
+    static final class AtomicFilter extends AtomicOn {
+        AtomicFilter(IReducingFunction<Blackhole, ? super Integer> rf) {
+            super(rf);
+        }
+
+        @Override
+        public Blackhole apply(Blackhole result, Integer input, AtomicBoolean reduced) {
+            if (even.test(input))
+                return rf.apply(result, input, reduced);
+            return result;
+        }
+    }
+
+    static final class AtomicTake extends AtomicOn {
+        long taken = 0;
+
+        AtomicTake(IReducingFunction<Blackhole, ? super Integer> rf) {
+            super(rf);
+        }
+
+        @Override
+        public Blackhole apply(Blackhole result, Integer input, AtomicBoolean reduced) {
+            Blackhole ret = result;
+            if (taken < Long.MAX_VALUE) {
+                ret = rf.apply(result, input, reduced);
+                taken++;
+            } else {
+                reduced.set(true);
+            }
+            return ret;
+        }
+    }
+
+    static final class AtomicSink implements IReducingFunction<Blackhole, Integer> {
+        @Override
+        public Blackhole apply() {
+            throw new IllegalStateException();
+        }
+
+        @Override
+        public Blackhole apply(Blackhole bh) {
+            return bh;
+        }
+
+        @Override
+        public Blackhole apply(Blackhole bh, Integer input, AtomicBoolean reduced) {
+            bh.consume(input);
+            return bh;
+        }
+    }
+}
@@ -0,0 +1,35 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers.benchmarks;
+
+import com.cognitect.transducers.AReducingFunction;
+import com.cognitect.transducers.Reduced;
+import org.openjdk.jmh.infra.Blackhole;
+
+
+/**
+ * Terminal reducing function that hands every input to a Blackhole, so
+ * transducer benchmarks pay the same per-element sink cost as the
+ * Stream.forEach(bh::consume) baselines they are compared with.
+ * @param <T> Type of input to consume
+ */
+public class Sink<T> extends AReducingFunction<Blackhole, T> {
+
+    @Override
+    public Blackhole apply(Blackhole bh, T input, Reduced reduced) {
+        bh.consume(input);
+        return bh;
+    }
+}
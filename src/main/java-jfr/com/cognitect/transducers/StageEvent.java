@@ -0,0 +1,78 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for one reduction through an instrumented stage,
+ * spanning from the creation of its reducing function to its completion.
+ * This source root is compiled apart from src/main/java, against Java 11,
+ * so the rest of the library still builds for Java 8; Instrumentation only
+ * loads Recorder, reflectively, once it has found jdk.jfr on the running
+ * JVM, so the library still runs where it is absent.
+ */
+@Name("com.cognitect.transducers.Stage")
+@Label("Transducer Stage")
+@Category("Transducers")
+@Description("A reduction through an instrumented transducer stage")
+final class StageEvent extends Event {
+
+    @Label("Stage")
+    String stage;
+
+    @Label("Inputs")
+    long in;
+
+    @Label("Outputs")
+    long out;
+
+    @Label("Stage Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long stageTime;
+
+    @Label("Terminated Early")
+    boolean terminated;
+
+    static final class Recorder extends StageRecorder {
+        @Override
+        Object start() {
+            StageEvent e = new StageEvent();
+            if (!e.isEnabled())
+                return null;
+            e.begin();
+            return e;
+        }
+
+        @Override
+        void commit(Object event, String stage, long in, long out, long nanos, boolean terminated) {
+            StageEvent e = (StageEvent) event;
+            e.end();
+            if (e.shouldCommit()) {
+                e.stage = stage;
+                e.in = in;
+                e.out = out;
+                e.stageTime = nanos;
+                e.terminated = terminated;
+                e.commit();
+            }
+        }
+    }
+}
@@ -14,17 +14,22 @@
 
 package com.cognitect.transducers;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Abstract base class for implementing a reducing function. Zero-arity
  * overload of apply used for initialization throws an exception if called.
  * Single-arity overload of apply used for completing reduction is the
- * identity function. Derived classes must implement the three-arity overload
- * of apply, and may implement either of the other two overloads as required.
+ * identity function. Derived classes must implement the three-arity
+ * overload of apply taking Reduced, and may implement either of the other
+ * two overloads as required.
  * @param <R> Type of first argument and return value
  * @param <T> Type of input to reduce
  */
 public abstract class AReducingFunction<R, T> implements IReducingFunction<R, T> {
 
+    private Reduced bridge;
+
     /**
      * Throws IllegalStateException.
      * @return
@@ -43,4 +48,41 @@ public abstract class AReducingFunction<R, T> implements IReducingFunction<R, T>
     public R apply(R result) {
         return result;
     }
+
+    /**
+     * Applies the reducing function to the current result and the new
+     * input, returning a new result; set reduced to true to stop the
+     * reduction process. Derived classes implement this overload, which
+     * the reduction process and the transducers in Fns call.
+     * @param result The current result value
+     * @param input New input to process
+     * @param reduced A flag which can be set to true to stop
+     *                the reduction process
+     * @return A new result value
+     */
+    @Override
+    public abstract R apply(R result, T input, Reduced reduced);
+
+    /**
+     * Forwards to the Reduced overload of apply and copies back any request
+     * to stop. The Reduced passed on is created on first use and reused by
+     * later calls on this instance, so a reducing function called through
+     * this overload must not be stepped by several threads at once.
+     * @param result The current result value
+     * @param input New input to process
+     * @param reduced A boolean value which can be set to true
+     *                to stop the reduction process
+     * @return A new result value
+     */
+    @Override
+    public R apply(R result, T input, AtomicBoolean reduced) {
+        Reduced r = bridge;
+        if (r == null)
+            r = bridge = new Reduced();
+        r.set(reduced.get());
+        R ret = apply(result, input, r);
+        if (r.get())
+            reduced.set(true);
+        return ret;
+    }
 }
\ No newline at end of file
@@ -14,12 +14,14 @@
 
 package com.cognitect.transducers;
 
+import java.util.concurrent.atomic.AtomicBoolean;
+
 /**
  * Abstract base class for implementing a reducing function that chains to
  * another reducing function. Zero-arity and single-arity overloads of apply
  * delegate to the chained reducing function. Derived classes must implement
- * the three-arity overload of apply, and may implement either of the other
- * two overloads as required.
+ * the three-arity overload of apply taking Reduced, and may implement
+ * either of the other two overloads as required.
  * @param <R> Type of first argument and return value of the reducing functions
  * @param <A> Input type of reducing function being chained to
  * @param <B> Input type of this reducing function
@@ -27,6 +29,7 @@ package com.cognitect.transducers;
 public abstract class AReducingFunctionOn<R, A, B> implements IReducingFunction<R, B> {
 
     protected IReducingFunction<R, ? super A> rf;
+    private Reduced bridge;
 
     /**
      * Constructs a reducing function that chains to the given
@@ -55,4 +58,41 @@ public abstract class AReducingFunctionOn<R, A, B> implements IReducingFunction<
     public R apply(R result) {
         return rf.apply(result);
     }
+
+    /**
+     * Applies the reducing function to the current result and the new
+     * input, returning a new result; set reduced to true to stop the
+     * reduction process. Derived classes implement this overload, which
+     * the reduction process and the transducers in Fns call.
+     * @param result The current result value
+     * @param input New input to process
+     * @param reduced A flag which can be set to true to stop
+     *                the reduction process
+     * @return A new result value
+     */
+    @Override
+    public abstract R apply(R result, B input, Reduced reduced);
+
+    /**
+     * Forwards to the Reduced overload of apply and copies back any request
+     * to stop. The Reduced passed on is created on first use and reused by
+     * later calls on this instance, so a reducing function called through
+     * this overload must not be stepped by several threads at once.
+     * @param result The current result value
+     * @param input New input to process
+     * @param reduced A boolean value which can be set to true
+     *                to stop the reduction process
+     * @return A new result value
+     */
+    @Override
+    public R apply(R result, B input, AtomicBoolean reduced) {
+        Reduced r = bridge;
+        if (r == null)
+            r = bridge = new Reduced();
+        r.set(reduced.get());
+        R ret = apply(result, input, r);
+        if (r.get())
+            reduced.set(true);
+        return ret;
+    }
 }
\ No newline at end of file
@@ -0,0 +1,175 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * A bounded, thread-safe memo of the results of a function, used by
+ * Fns#mapCached and Fns#keepCached. One cache can be shared by any number of
+ * transducers, reducing functions and threads.
+ *
+ * Keys are spread by hash over independently locked stripes, each a
+ * least-recently-used map that evicts its eldest entry when full, so threads
+ * working on different keys rarely contend. A missing value is computed
+ * outside the lock; two threads that miss the same key at once may both
+ * compute it. Null results are cached too. Hits, misses and evictions are
+ * counted, to size the cache from the hit rate seen in production.
+ * @param <K> the type of keys
+ * @param <V> the type of values
+ */
+public final class Cache<K, V> {
+
+    private static final Object NULL = new Object();
+
+    private final Stripe[] stripes;
+    private final int mask;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private static final class Stripe extends ReentrantLock {
+        final LinkedHashMap<Object, Object> map;
+
+        Stripe(final int capacity, final LongAdder evictions) {
+            map = new LinkedHashMap<Object, Object>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<Object, Object> eldest) {
+                    if (size() <= capacity)
+                        return false;
+                    evictions.increment();
+                    return true;
+                }
+            };
+        }
+    }
+
+    /**
+     * Creates a cache that holds at most maxEntries values. It has one stripe
+     * per 64 entries, up to twice the number of processors rounded up to a
+     * power of two, and each stripe holds an equal share of maxEntries.
+     * @param maxEntries the maximum number of values held
+     */
+    public Cache(int maxEntries) {
+        if (maxEntries < 1)
+            throw new IllegalArgumentException("cache size must be positive: " + maxEntries);
+        int n = Math.min(Runtime.getRuntime().availableProcessors() * 2, Math.max(1, maxEntries / 64));
+        n = Integer.highestOneBit(Math.max(n, 1) * 2 - 1);
+        int capacity = (maxEntries + n - 1) / n;
+        this.stripes = new Stripe[n];
+        for (int i = 0; i < n; i++)
+            stripes[i] = new Stripe(capacity, evictions);
+        this.mask = n - 1;
+        this.maxEntries = capacity * n;
+    }
+
+    private Stripe stripe(Object key) {
+        int h = key == null ? 0 : key.hashCode() * 0x9E3779B9;
+        return stripes[(h ^ (h >>> 16)) & mask];
+    }
+
+    /**
+     * Returns the value cached for key, first computing it with f and caching
+     * it if it is absent.
+     * @param key a key, which may be null
+     * @param f the function that computes the value of a key
+     * @return the value of key
+     */
+    @SuppressWarnings("unchecked")
+    public V get(K key, Function<? super K, ? extends V> f) {
+        Stripe s = stripe(key);
+        Object v;
+        s.lock();
+        try {
+            v = s.map.get(key);
+        } finally {
+            s.unlock();
+        }
+        if (v != null) {
+            hits.increment();
+            return v == NULL ? null : (V) v;
+        }
+        misses.increment();
+        V value = f.apply(key);
+        s.lock();
+        try {
+            s.map.put(key, value == null ? NULL : value);
+        } finally {
+            s.unlock();
+        }
+        return value;
+    }
+
+    /**
+     * Returns the number of values cached.
+     * @return the number of values
+     */
+    public int size() {
+        int n = 0;
+        for (Stripe s : stripes) {
+            s.lock();
+            try {
+                n += s.map.size();
+            } finally {
+                s.unlock();
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Returns the maximum number of values held, maxEntries rounded up to a
+     * multiple of the number of stripes.
+     * @return the maximum number of values
+     */
+    public int maxEntries() {
+        return maxEntries;
+    }
+
+    /**
+     * Returns the number of lookups that found their key cached.
+     * @return the number of hits
+     */
+    public long hits() {
+        return hits.sum();
+    }
+
+    /**
+     * Returns the number of lookups that computed their value.
+     * @return the number of misses
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    /**
+     * Returns the number of values evicted to make room for others.
+     * @return the number of evictions
+     */
+    public long evictions() {
+        return evictions.sum();
+    }
+
+    @Override
+    public String toString() {
+        return "Cache{size=" + size() + ", hits=" + hits() + ", misses=" + misses()
+                + ", evictions=" + evictions() + "}";
+    }
+}
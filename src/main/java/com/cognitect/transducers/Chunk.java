@@ -0,0 +1,91 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.RandomAccess;
+
+/**
+ * An unmodifiable, array-backed list of inputs gathered by Fns#chunked. Its
+ * array is allocated once, at exactly the chunk size, and handed downstream
+ * without being copied. A chunk from a pooling transducer can be released
+ * once downstream is done with it, so that its array is reused for a later
+ * chunk rather than allocated anew.
+ * @param <A> the type of inputs in the chunk
+ */
+public final class Chunk<A> extends AbstractList<A> implements RandomAccess {
+
+    private final Object[] items;
+    private final Queue<Chunk<A>> pool;
+    private int size;
+    private boolean released;
+
+    Chunk(int capacity, Queue<Chunk<A>> pool) {
+        this.items = new Object[capacity];
+        this.pool = pool;
+    }
+
+    /**
+     * Takes a chunk from pool, or creates one if pool is null or empty.
+     */
+    static <A> Chunk<A> take(int capacity, Queue<Chunk<A>> pool) {
+        Chunk<A> chunk = pool == null ? null : pool.poll();
+        if (chunk == null)
+            return new Chunk<A>(capacity, pool);
+        chunk.released = false;
+        return chunk;
+    }
+
+    void append(A a) {
+        items[size++] = a;
+    }
+
+    boolean isFull() {
+        return size == items.length;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public A get(int index) {
+        if (index >= size)
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        return (A) items[index];
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Signals that the chunk is no longer used. If the chunk came from a
+     * pooling transducer, it is emptied and, if the pool has room, reused for
+     * a later chunk, so it must not be read after it is released. Chunks that
+     * are never released are simply garbage collected.
+     * @throws IllegalStateException if the chunk has already been released
+     */
+    public void release() {
+        if (released)
+            throw new IllegalStateException("chunk already released");
+        released = true;
+        if (pool != null) {
+            Arrays.fill(items, 0, size, null);
+            size = 0;
+            pool.offer(this);
+        }
+    }
+}
@@ -0,0 +1,92 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * The result of the Fns#fromCollector reducing function: a collector's
+ * mutable container while reducing, and the collector's result once the
+ * reduction has been completed.
+ * @param <A> the type of inputs
+ * @param <R> the result type of the collector
+ */
+public final class Collected<A, R> {
+
+    private final Object container;
+    private final BiConsumer<Object, ? super A> accumulator;
+    private final Function<Object, R> finisher;
+    private R result;
+    private boolean finished;
+
+    @SuppressWarnings("unchecked")
+    private Collected(Collector<? super A, ?, R> collector) {
+        Collector<? super A, Object, R> c = (Collector<? super A, Object, R>) collector;
+        container = c.supplier().get();
+        accumulator = c.accumulator();
+        finisher = c.finisher();
+    }
+
+    /**
+     * Creates an empty container of collector, to start a reduction with
+     * Fns#fromCollector from.
+     * @param collector a collector
+     * @param <A> the type of inputs
+     * @param <R> the result type of the collector
+     * @return a new, empty Collected
+     */
+    public static <A, R> Collected<A, R> of(Collector<? super A, ?, R> collector) {
+        return new Collected<>(collector);
+    }
+
+    void accept(A input) {
+        if (finished)
+            throw new IllegalStateException("already finished");
+        accumulator.accept(container, input);
+    }
+
+    void finish() {
+        if (!finished) {
+            result = finisher.apply(container);
+            finished = true;
+        }
+    }
+
+    /**
+     * Returns true once the reduction has been completed.
+     * @return true if finished
+     */
+    public boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * Returns the result of the collector.
+     * @return the result
+     * @throws IllegalStateException if the reduction has not been completed
+     */
+    public R get() {
+        if (!finished)
+            throw new IllegalStateException("not finished");
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return finished ? String.valueOf(result) : String.valueOf(container);
+    }
+}
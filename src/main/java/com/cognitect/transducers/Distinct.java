@@ -0,0 +1,232 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+/**
+ * The mode of the distinct transducers in Fns and LongFns.
+ *
+ * An exact mode remembers every input seen, in an open-addressing table
+ * (a primitive long[] for LongFns#distinct and for 64-bit keys), so memory
+ * grows with the number of distinct inputs. An approximate mode remembers
+ * inputs in a Bloom filter whose size is fixed up front by the expected
+ * number of distinct inputs and the false-positive rate wanted at that
+ * number: memory is bounded, no duplicate ever passes, but a new input is
+ * dropped, as if it were a duplicate, with about the false-positive rate.
+ * That bound holds for longs and for the 64-bit keys of
+ * Fns#distinct(Distinct, ToLongFunction). Fns#distinct(Distinct) keys
+ * objects by their 32-bit hashCode, so objects with equal hash codes are
+ * always taken for duplicates of each other: with well-spread hash codes, a
+ * new object is also dropped with about the probability that its hash code
+ * is among those of the n objects already seen, n / 2^32, which exceeds a
+ * small fpp long before billions of inputs.
+ *
+ * A mode holds no state of its own; each reducing function made with it
+ * starts with an empty set, so one mode can be shared by any number of
+ * reductions, concurrent or not.
+ */
+public final class Distinct {
+
+    /** The number of 64-bit words and of hash functions of the Bloom filter, 0 if exact. */
+    private final int words;
+    private final int k;
+
+    private Distinct(int words, int k) {
+        this.words = words;
+        this.k = k;
+    }
+
+    /**
+     * Returns an exact mode.
+     * @return a new exact mode
+     */
+    public static Distinct exact() {
+        return new Distinct(0, 0);
+    }
+
+    /**
+     * Returns an approximate mode backed by a Bloom filter sized for
+     * expectedInsertions distinct inputs at a false-positive rate of fpp.
+     * The filter takes about -expectedInsertions * ln(fpp) / ln(2)^2 bits.
+     * @param expectedInsertions the expected number of distinct inputs
+     * @param fpp the false-positive rate at expectedInsertions, between 0 and 1
+     * @return a new approximate mode
+     */
+    public static Distinct approximate(long expectedInsertions, double fpp) {
+        if (expectedInsertions < 1)
+            throw new IllegalArgumentException("expected insertions must be positive: " + expectedInsertions);
+        if (!(fpp > 0 && fpp < 1))
+            throw new IllegalArgumentException("false-positive rate must be between 0 and 1: " + fpp);
+        double ln2 = Math.log(2);
+        long words = (long) Math.ceil(-expectedInsertions * Math.log(fpp) / (ln2 * ln2) / 64);
+        if (words > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException("Bloom filter too large: " + words * 64 + " bits");
+        words = Math.max(words, 1);
+        int k = (int) Math.max(1, Math.round((double) words * 64 / expectedInsertions * ln2));
+        return new Distinct((int) words, k);
+    }
+
+    /**
+     * Returns true if this mode is exact.
+     * @return true if exact
+     */
+    public boolean isExact() {
+        return words == 0;
+    }
+
+    /**
+     * Returns the estimated probability that a reduction in this mode drops
+     * its next new long or 64-bit key as a duplicate once it has let n
+     * distinct ones through: 0 in exact mode, and (1 - e^(-kn/m))^k for the
+     * Bloom filter of m bits and k hash functions in approximate mode.
+     * Objects keyed by hash code add about n / 2^32 (see Distinct).
+     * @param n the number of distinct inputs already seen
+     * @return the estimated false-positive rate
+     */
+    public double falsePositiveRate(long n) {
+        if (isExact() || n <= 0)
+            return 0;
+        return Math.pow(-Math.expm1(-(double) k * n / (words * 64.0)), k);
+    }
+
+    /**
+     * Returns a new filter for objects, compared by equals.
+     */
+    Filter objects() {
+        return new ObjectSet();
+    }
+
+    /**
+     * Returns a new filter for longs.
+     */
+    Filter longs() {
+        return isExact() ? new LongSet() : new Bloom(words, k);
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 33)) * 0xFF51AFD7ED558CCDL;
+        x = (x ^ (x >>> 33)) * 0xC4CEB9FE1A85EC53L;
+        return x ^ (x >>> 33);
+    }
+
+    /**
+     * A set of the inputs seen. add returns true if an input is new.
+     */
+    static abstract class Filter {
+        boolean add(Object input) {
+            return add(input == null ? 0 : input.hashCode());
+        }
+
+        abstract boolean add(long input);
+    }
+
+    private static final class ObjectSet extends Filter {
+        final KeyTable table = new KeyTable(16) {
+            @Override
+            void relocate(int[] dest, int capacity) {
+            }
+        };
+
+        @Override
+        boolean add(Object input) {
+            return table.slot(input) < 0;
+        }
+
+        @Override
+        boolean add(long input) {
+            return add((Object) input);
+        }
+    }
+
+    /**
+     * Open-addressing set of longs with linear probing, at most half full.
+     * Slot value 0 marks an empty slot, so the key 0 is tracked by a flag.
+     */
+    private static final class LongSet extends Filter {
+        long[] keys = new long[16];
+        int size;
+        boolean zero;
+
+        @Override
+        boolean add(long input) {
+            if (input == 0) {
+                if (zero)
+                    return false;
+                zero = true;
+                size++;
+                return true;
+            }
+            if (!insert(keys, input))
+                return false;
+            size++;
+            if (size * 2 > keys.length)
+                grow();
+            return true;
+        }
+
+        private static boolean insert(long[] keys, long input) {
+            int mask = keys.length - 1;
+            for (int i = (int) mix(input) & mask; ; i = (i + 1) & mask) {
+                long k = keys[i];
+                if (k == 0) {
+                    keys[i] = input;
+                    return true;
+                }
+                if (k == input)
+                    return false;
+            }
+        }
+
+        private void grow() {
+            long[] bigger = new long[keys.length << 1];
+            for (long k : keys) {
+                if (k != 0)
+                    insert(bigger, k);
+            }
+            keys = bigger;
+        }
+    }
+
+    /**
+     * A Bloom filter of m bits and k hash functions, derived from two 64-bit
+     * hashes by double hashing. The high half of each combined hash picks a
+     * word and its low six bits pick the bit in it.
+     */
+    private static final class Bloom extends Filter {
+        final long[] bits;
+        final int k;
+
+        Bloom(int words, int k) {
+            this.bits = new long[words];
+            this.k = k;
+        }
+
+        @Override
+        boolean add(long input) {
+            long h1 = mix(input), h2 = mix(h1) | 1;
+            long words = bits.length;
+            boolean added = false;
+            for (int i = 0; i < k; i++) {
+                long c = h1 + i * h2;
+                int w = (int) ((c >>> 32) * words >>> 32);
+                long mask = 1L << c;
+                if ((bits[w] & mask) == 0) {
+                    bits[w] |= mask;
+                    added = true;
+                }
+            }
+            return added;
+        }
+    }
+}
@@ -0,0 +1,79 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The result of the Fns#fanout reducing function: a tuple of the results of
+ * each branch, in the order the branches were given, and whether each
+ * branch has been stopped by a reduced signal.
+ */
+public final class Fanout {
+
+    final Object[] results;
+    final boolean[] reduced;
+    /** The flag handed to each branch, one per reduction so that chunks of a fold do not share it. */
+    final Reduced branchReduced = new Reduced();
+    int live;
+
+    Fanout(int n) {
+        results = new Object[n];
+        reduced = new boolean[n];
+        live = n;
+    }
+
+    /**
+     * Returns the number of branches.
+     * @return the number of branches
+     */
+    public int size() {
+        return results.length;
+    }
+
+    /**
+     * Returns the result of branch i.
+     * @param i the index of a branch
+     * @param <R> the result type of the branch
+     * @return the result of the branch
+     */
+    @SuppressWarnings("unchecked")
+    public <R> R get(int i) {
+        return (R) results[i];
+    }
+
+    /**
+     * Returns true if branch i was stopped by a reduced signal.
+     * @param i the index of a branch
+     * @return true if reduced
+     */
+    public boolean isReduced(int i) {
+        return reduced[i];
+    }
+
+    /**
+     * Returns the results of the branches as a list.
+     * @return a fixed-size list of the results
+     */
+    public List<Object> toList() {
+        return Arrays.asList(results.clone());
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(results);
+    }
+}
@@ -15,18 +15,36 @@
 package com.cognitect.transducers;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.Queue;
+import java.util.Spliterator;
+import java.util.SplittableRandom;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.function.Predicate;
 import java.util.function.BiFunction;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 import static com.cognitect.transducers.Impl.reduce;
 
 public class Fns {
 
+    private static final int FOLD_CHUNK_SIZE = 512;
+
     /**
      * Converts an step function into a complete reducing function. If passed an IReducingFunction, which
      * is an IStepFunction, returns it; otherwise returns a new instance of IReducingFunction with a step
@@ -46,7 +64,7 @@ public class Fns {
         else
             return new AReducingFunction<R, T>() {
                 @Override
-                public R apply(R result, T input, AtomicBoolean reduced) {
+                public R apply(R result, T input, Reduced reduced) {
                     return sf.apply(result, input, reduced);
                 }
             };
@@ -88,6 +106,80 @@ public class Fns {
         return reduce(_xf, init, input);
     }
 
+    /**
+     * Reduces an array using transformed reducing function. Transforms reducing function by applying
+     * transducer. Reducing function must implement zero-arity apply that returns initial result
+     * to start reducing process.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R transduce(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf, B[] input) {
+        IReducingFunction<R, B> _xf = xf.apply(rf);
+        return Impl.reduce(_xf, rf.apply(), input);
+    }
+
+    /**
+     * Reduces an array using transformed reducing function. Transforms reducing function by applying
+     * transducer. Step function is converted to reducing function if necessary. Accepts initial value
+     * for reducing process as argument.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param init an initial value to start reducing process
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R transduce(ITransducer<A, B> xf, IStepFunction<R, ? super A> rf, R init, B[] input) {
+        IReducingFunction<R, ? super A> _rf = completing(rf);
+        IReducingFunction<R, B> _xf = xf.apply(_rf);
+        return Impl.reduce(_xf, init, input);
+    }
+
+    /**
+     * Reduces a Spliterator, pulling elements one at a time with tryAdvance,
+     * using transformed reducing function. Transforms reducing function by applying
+     * transducer. Reducing function must implement zero-arity apply that returns initial result
+     * to start reducing process.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R transduce(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf, Spliterator<B> input) {
+        IReducingFunction<R, B> _xf = xf.apply(rf);
+        return Impl.reduce(_xf, rf.apply(), input);
+    }
+
+    /**
+     * Reduces a Spliterator, pulling elements one at a time with tryAdvance,
+     * using transformed reducing function. Transforms reducing function by applying
+     * transducer. Step function is converted to reducing function if necessary. Accepts initial value
+     * for reducing process as argument.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param init an initial value to start reducing process
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R transduce(ITransducer<A, B> xf, IStepFunction<R, ? super A> rf, R init, Spliterator<B> input) {
+        IReducingFunction<R, ? super A> _rf = completing(rf);
+        IReducingFunction<R, B> _xf = xf.apply(_rf);
+        return Impl.reduce(_xf, init, input);
+    }
+
     /**
      * Transduces input into collection using built-in reducing function.
      * @param xf a transducer (or composed transducers) that transforms the reducing function
@@ -101,7 +193,7 @@ public class Fns {
     public static <R extends Collection<A>, A, B> R into(ITransducer<A, B> xf, R init, Iterable<B> input) {
         return transduce(xf, new AReducingFunction<R, A>() {
             @Override
-            public R apply(R result, A input, AtomicBoolean reduced) {
+            public R apply(R result, A input, Reduced reduced) {
                 result.add(input);
                 return result;
             }
@@ -121,6 +213,579 @@ public class Fns {
         return left.comp(right);
     }
 
+    /**
+     * Instruments a transducer as one stage called name: its reducing
+     * functions count inputs, outputs and early terminations and estimate
+     * the time spent in the stage, excluding downstream, into the stage's
+     * StageStats. See Instrumentation for sampling, listeners and Flight
+     * Recorder events. While instrumentation is disabled, the returned
+     * transducer adds nothing to the reducing functions of xf.
+     * @param name the name of the stage
+     * @param xf the transducer to instrument
+     * @param <A> the type of input processed by the reducing function xf transforms
+     * @param <B> the type of input processed by the transformed reducing function
+     * @return an instrumented transducer
+     */
+    public static <A, B> ITransducer<A, B> instrument(String name, ITransducer<A, B> xf) {
+        return Instrumentation.instrument(name, xf);
+    }
+
+    /**
+     * Instruments each stage of a composed transducer on its own, naming
+     * them name[0], name[1], ... in the order inputs flow through them, with
+     * the kind of map, filter and keep stages appended, e.g. name[0]:map.
+     * Fused map, filter and keep stages (see ITransducer#comp) are split
+     * apart, so that each can be measured.
+     * @param name the name of the pipeline
+     * @param xf the composed transducer to instrument
+     * @param <A> the type of input processed by the reducing function xf transforms
+     * @param <B> the type of input processed by the transformed reducing function
+     * @return a transducer with every stage instrumented
+     */
+    public static <A, B> ITransducer<A, B> instrumentStages(String name, ITransducer<A, B> xf) {
+        return Instrumentation.instrumentStages(name, xf);
+    }
+
+    /**
+     * Returns a transducer equivalent to xf whose reducing functions are
+     * built from copies of the stage classes made for their shape alone:
+     * the sequence of stage classes and the class of the reducing function
+     * xf is applied to. Each call from one stage to the next then only ever
+     * sees one receiver class, so the JIT can inline the whole chain into
+     * the first stage, however many other pipelines share the same stages.
+     * Copies are defined once per shape, as hidden classes, at the first
+     * apply, and every apply constructs them as xf constructed its stages.
+     * Only the stages before the first one that cannot be copied, e.g. one
+     * defined outside this package, are compiled; that stage and the rest
+     * are left as they are. Before Java 15, which added hidden classes, xf
+     * is returned, and the first such fallback is logged.
+     * @param xf a transducer (or composed transducers)
+     * @param <A> the type of input processed by the reducing function xf transforms
+     * @param <B> the type of input processed by the transformed reducing function
+     * @return a compiled transducer
+     */
+    public static <A, B> ITransducer<A, B> compile(ITransducer<A, B> xf) {
+        return PipelineCompiler.compile(xf);
+    }
+
+    /**
+     * Reduces input in parallel, in the spirit of Clojure's reducers/fold. Splits
+     * input into chunks of about n elements, reduces each chunk on the common
+     * ForkJoinPool with a fresh reducing function from xf, starting from rf's initial
+     * value, and merges the chunk results in input order with combiner. The merged
+     * result is completed once with rf.
+     *
+     * Only stateless transducers (see ITransducer#isStateless) can be applied to
+     * chunks independently. Any other transducer, e.g. one that includes take,
+     * partitionBy or dedupe, forces a sequential reduction over the whole input, as
+     * with transduce, and combiner is not used. When running in parallel, a reduced
+     * signal from rf only stops the chunk that raised it.
+     * @param n the number of elements at or below which a chunk is reduced sequentially
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each chunk
+     * @param combiner an associative function that merges the results of two adjacent chunks
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R fold(int n, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, Spliterator<B> input) {
+        if (n < 1)
+            throw new IllegalArgumentException("chunk size must be positive: " + n);
+        if (!xf.isStateless())
+            return transduce(xf, rf, input);
+        return Impl.fold(n, xf, rf, combiner, input);
+    }
+
+    /**
+     * Reduces input in parallel. See fold(int, ITransducer, IReducingFunction, BinaryOperator, Spliterator).
+     * @param n the number of elements at or below which a chunk is reduced sequentially
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each chunk
+     * @param combiner an associative function that merges the results of two adjacent chunks
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R fold(int n, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, List<B> input) {
+        return fold(n, xf, rf, combiner, input.spliterator());
+    }
+
+    /**
+     * Reduces input in parallel. See fold(int, ITransducer, IReducingFunction, BinaryOperator, Spliterator).
+     * @param n the number of elements at or below which a chunk is reduced sequentially
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each chunk
+     * @param combiner an associative function that merges the results of two adjacent chunks
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R fold(int n, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, B[] input) {
+        return fold(n, xf, rf, combiner, Arrays.spliterator(input));
+    }
+
+    /**
+     * Reduces input in parallel, in chunks of 512 elements. See
+     * fold(int, ITransducer, IReducingFunction, BinaryOperator, Spliterator).
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each chunk
+     * @param combiner an associative function that merges the results of two adjacent chunks
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R fold(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, Spliterator<B> input) {
+        return fold(FOLD_CHUNK_SIZE, xf, rf, combiner, input);
+    }
+
+    /**
+     * Reduces input in parallel, in chunks of 512 elements. See
+     * fold(int, ITransducer, IReducingFunction, BinaryOperator, Spliterator).
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each chunk
+     * @param combiner an associative function that merges the results of two adjacent chunks
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R fold(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, List<B> input) {
+        return fold(FOLD_CHUNK_SIZE, xf, rf, combiner, input);
+    }
+
+    /**
+     * Reduces input in parallel, in chunks of 512 elements. See
+     * fold(int, ITransducer, IReducingFunction, BinaryOperator, Spliterator).
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each chunk
+     * @param combiner an associative function that merges the results of two adjacent chunks
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R fold(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, B[] input) {
+        return fold(FOLD_CHUNK_SIZE, xf, rf, combiner, input);
+    }
+
+
+    /**
+     * Transduces each element of input on its own, in parallel, and reduces the
+     * outputs in input order, like core.async's pipeline. Each element goes
+     * through a fresh reducing function from xf on a worker from the common
+     * ForkJoinPool, so stateful transducers see one element at a time, and its
+     * outputs are handed to rf on the calling thread. At most parallelism
+     * elements are in flight, and outputs that are ready early wait in a reorder
+     * buffer of as many slots. A reduced signal from rf stops submitting elements
+     * and skips those not yet started. An exception thrown while transducing an
+     * element is rethrown after the outputs of all the elements before it have
+     * been reduced.
+     * @param parallelism the maximum number of elements transduced at once
+     * @param xf a transducer applied to each element on its own
+     * @param rf a reducing function
+     * @param input the input to reduce
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R pipeline(int parallelism, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                       Iterable<B> input) {
+        return pipeline(parallelism, xf, rf, input, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Transduces each element of input on its own, in parallel, on executor, and
+     * reduces the outputs in input order (see pipeline(int, ITransducer,
+     * IReducingFunction, Iterable)). The executor may run tasks on platform or
+     * virtual threads; the calling thread only waits for results.
+     * @param parallelism the maximum number of elements transduced at once
+     * @param xf a transducer applied to each element on its own
+     * @param rf a reducing function
+     * @param input the input to reduce
+     * @param executor the executor that transduces each element
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R pipeline(int parallelism, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                       Iterable<B> input, Executor executor) {
+        if (parallelism < 1)
+            throw new IllegalArgumentException("parallelism must be positive: " + parallelism);
+        return Impl.pipeline(parallelism, xf, rf, input, executor);
+    }
+
+    /**
+     * Applies transducer to a stream lazily. Returns a sequential stream whose
+     * elements are produced on demand, by pushing elements of input through the
+     * transformed reducing function one at a time, so expanding steps such as
+     * mapcat only buffer the output of a single input, take stops pulling from
+     * input once it is reduced, and completion (e.g. the final partition of
+     * partitionAll) runs once, when input is exhausted or reduced. Input is
+     * never materialized and may be infinite. Closing the returned stream
+     * closes input.
+     * @param xf a transducer (or composed transducers) to apply
+     * @param input the stream to transform
+     * @param <A> type of elements of the returned stream
+     * @param <B> type of elements of input
+     * @return a lazy stream of the transformed elements
+     */
+    public static <A, B> Stream<A> stream(ITransducer<A, B> xf, Stream<B> input) {
+        return StreamSupport.stream(new TransducingSpliterator<A, B>(xf, input.spliterator()), false)
+                .onClose(input::close);
+    }
+
+    /**
+     * Applies transducer to input lazily. Returns a single-use iterator that
+     * pulls elements from input only as needed to produce its next element,
+     * buffering at most what one input produced, and that completes the
+     * transformed reducing function exactly once, when input is exhausted or
+     * reduced.
+     * @param xf a transducer (or composed transducers) to apply
+     * @param input the input to transform
+     * @param <A> type of elements produced
+     * @param <B> type of input elements
+     * @return an iterator over the transformed input
+     */
+    public static <A, B> Iterator<A> sequence(ITransducer<A, B> xf, Iterable<B> input) {
+        return new TransducingSpliterator<A, B>(xf, input.spliterator());
+    }
+
+    /**
+     * Returns a reusable view of input transformed by transducer. Nothing is
+     * done up front and nothing is cached: each call to iterator applies xf to
+     * a fresh reducing function and returns a new lazy sequence of input, so
+     * a pipeline definition can be shared and iterated any number of times.
+     * @param xf a transducer (or composed transducers) to apply
+     * @param input the input to transform
+     * @param <A> type of elements produced
+     * @param <B> type of input elements
+     * @return an iterable over the transformed input
+     */
+    public static <A, B> Iterable<A> eduction(final ITransducer<A, B> xf, final Iterable<B> input) {
+        return () -> sequence(xf, input);
+    }
+
+    /**
+     * Returns a reusable view of the merge of inputs, each already sorted by
+     * comparator, as one sorted sequence, without re-sorting. Each iterator
+     * holds the next element of every input in a heap, so memory is O(k) for
+     * k inputs and each element costs O(log k) comparisons. Equal elements
+     * are taken from the inputs in list order. An input is only pulled when
+     * the element after the one it last produced is asked for, so stopping
+     * early, e.g. on a reduced signal, stops pulling from all inputs at once.
+     * @param comparator the order every input is sorted by
+     * @param inputs the sorted inputs
+     * @param <B> the type of elements
+     * @return an iterable over the merged inputs
+     */
+    public static <B> Iterable<B> merged(final Comparator<? super B> comparator,
+                                         final List<? extends Iterable<? extends B>> inputs) {
+        return () -> new MergeIterator<B>(comparator, inputs);
+    }
+
+    /**
+     * Reduces the merge of inputs, each already sorted by comparator, using
+     * transformed reducing function, as transduce(xf, rf, merged(comparator,
+     * inputs)). When the reduction is reduced, e.g. by take or takeWhile, no
+     * further elements are pulled from any input.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param comparator the order every input is sorted by
+     * @param inputs the sorted inputs
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R transduceMerged(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                              Comparator<? super B> comparator,
+                                              List<? extends Iterable<? extends B>> inputs) {
+        return transduce(xf, rf, merged(comparator, inputs));
+    }
+
+    /**
+     * Reduces the merge of inputs, each already sorted by comparator, using
+     * transformed reducing function, starting with init, as transduce(xf, rf,
+     * init, merged(comparator, inputs)).
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param init an initial value to start reducing process
+     * @param comparator the order every input is sorted by
+     * @param inputs the sorted inputs
+     * @param <R> return type
+     * @param <A> type expected by reducing function
+     * @param <B> type of input and type accepted by reducing function returned by transducer
+     * @return result of reducing transformed input
+     */
+    public static <R, A, B> R transduceMerged(ITransducer<A, B> xf, IStepFunction<R, ? super A> rf, R init,
+                                              Comparator<? super B> comparator,
+                                              List<? extends Iterable<? extends B>> inputs) {
+        return transduce(xf, rf, init, merged(comparator, inputs));
+    }
+
+    /**
+     * Returns a Collector that transduces stream elements with xf and reduces
+     * them with rf, so a transducer pipeline can run in Stream#collect. Each
+     * container the stream creates holds its own reducing function from xf
+     * and an initial result from rf. A parallel stream splits the elements
+     * over several containers and merges their results with combiner, in
+     * encounter order, which is only allowed for stateless transducers (see
+     * ITransducer#isStateless); for any other, e.g. one with take or
+     * partitionAll, merging throws IllegalStateException, so collect such a
+     * pipeline from a sequential stream. The result is completed with rf
+     * once. A Collector cannot stop its stream: after a reduced signal the
+     * remaining elements are still delivered, and ignored. Use
+     * stream(ITransducer, Stream) to stop pulling elements early.
+     * @param xf a transducer (or composed transducers)
+     * @param rf a reducing function whose zero-arity apply returns an initial value for each container
+     * @param combiner an associative function that merges the results of two containers
+     * @param <R> the type of the result
+     * @param <A> the type of input expected by rf
+     * @param <B> the type of stream elements
+     * @return a new Collector
+     */
+    public static <R, A, B> Collector<B, ?, R> toCollector(ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                                           BinaryOperator<R> combiner) {
+        return Impl.collector(xf, rf, combiner);
+    }
+
+    /**
+     * Returns a reducing function that accumulates inputs with a Collector,
+     * e.g. one from Collectors. Its result is a Collected holding the
+     * collector's mutable container, from its own zero-arity apply or from
+     * Collected#of, and completion applies the collector's finisher, whose
+     * result Collected#get returns.
+     * @param collector a collector
+     * @param <R> the result type of the collector
+     * @param <A> the type of input
+     * @return a new reducing function
+     */
+    public static <R, A> IReducingFunction<Collected<A, R>, A> fromCollector(Collector<? super A, ?, R> collector) {
+        return Impl.fromCollector(collector);
+    }
+
+    /**
+     * Creates a reducing function that groups inputs by key and reduces the
+     * inputs of each key with downstream, started with its initial value,
+     * into a Groups map of each key to its result. A reduced signal from
+     * downstream stops the reduction for that key only; later inputs with
+     * that key are ignored. Completion completes the result of every key
+     * with downstream. Partial results, e.g. of fold, can be combined with
+     * Groups#merge. downstream is shared by all keys, so it must not keep
+     * state of its own; use the overload that takes a transducer for that.
+     * @param keyFn a function that returns the key of an input
+     * @param downstream a reducing function for the inputs of each key
+     * @param <K> the type of keys
+     * @param <V> the type of the result for each key
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    public static <K, V, A> IReducingFunction<Groups<K, V>, A> groupBy(final Function<? super A, ? extends K> keyFn,
+                                                                      final IReducingFunction<V, ? super A> downstream) {
+        return groupBy(keyFn, null, downstream);
+    }
+
+    /**
+     * Creates a reducing function that groups inputs by key and reduces the
+     * inputs of each key with xf applied to downstream, so that each key has
+     * its own state for stateful transducers such as take or partitionAll.
+     * A reduced signal for a key, e.g. from take, stops the reduction for
+     * that key only; later inputs with that key are ignored. Completion
+     * completes the result of every key, flushing its transducers. Partial
+     * results, e.g. of fold, can be combined with Groups#merge only if xf is
+     * stateless (see ITransducer#isStateless); otherwise merge throws
+     * IllegalStateException, so reduce sequentially.
+     * @param keyFn a function that returns the key of an input
+     * @param xf a transducer applied to the inputs of each key, or null
+     * @param downstream a reducing function for the outputs of xf of each key
+     * @param <K> the type of keys
+     * @param <V> the type of the result for each key
+     * @param <A> the type of inputs
+     * @param <B> the type of outputs of xf
+     * @return a new reducing function
+     */
+    public static <K, V, A, B> IReducingFunction<Groups<K, V>, A> groupBy(final Function<? super A, ? extends K> keyFn,
+                                                                         final ITransducer<B, A> xf,
+                                                                         final IReducingFunction<V, ? super B> downstream) {
+        return new AReducingFunction<Groups<K, V>, A>() {
+            @Override
+            public Groups<K, V> apply() {
+                return new Groups<K, V>();
+            }
+
+            @Override
+            public Groups<K, V> apply(Groups<K, V> result) {
+                result.complete();
+                return result;
+            }
+
+            @Override
+            public Groups<K, V> apply(Groups<K, V> result, A input, Reduced reduced) {
+                result.step(keyFn.apply(input), input, xf, downstream);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Creates a reducing function that counts inputs by key into Frequencies,
+     * which keeps primitive long counts in an open-addressing table. Partial
+     * results, e.g. of fold, can be combined with Frequencies#merge.
+     * @param keyFn a function that returns the key of an input
+     * @param <K> the type of keys
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    public static <K, A> IReducingFunction<Frequencies<K>, A> frequencies(final Function<? super A, ? extends K> keyFn) {
+        return new AReducingFunction<Frequencies<K>, A>() {
+            @Override
+            public Frequencies<K> apply() {
+                return new Frequencies<K>();
+            }
+
+            @Override
+            public Frequencies<K> apply(Frequencies<K> result, A input, Reduced reduced) {
+                result.add(keyFn.apply(input), 1);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Creates a reducing function that hands each input to every one of rfs,
+     * so that several reductions are done in one pass over the input. Apply
+     * a transducer to a branch's reducing function to give it its own
+     * pipeline. Each branch starts from its own initial value. A branch that
+     * signals reduced gets no more inputs, and the whole reduction is
+     * reduced once every branch is. Completion completes the result of every
+     * branch, and the result is a Fanout tuple of the branches' results.
+     * @param rfs the reducing functions of the branches
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    @SafeVarargs
+    public static <A> IReducingFunction<Fanout, A> fanout(final IReducingFunction<?, ? super A>... rfs) {
+        return new AReducingFunction<Fanout, A>() {
+            @SuppressWarnings("unchecked")
+            IReducingFunction<Object, A> branch(int i) {
+                return (IReducingFunction<Object, A>) rfs[i];
+            }
+
+            @Override
+            public Fanout apply() {
+                Fanout f = new Fanout(rfs.length);
+                for (int i = 0; i < rfs.length; i++)
+                    f.results[i] = branch(i).apply();
+                return f;
+            }
+
+            @Override
+            public Fanout apply(Fanout result) {
+                for (int i = 0; i < rfs.length; i++)
+                    result.results[i] = branch(i).apply(result.results[i]);
+                return result;
+            }
+
+            @Override
+            public Fanout apply(Fanout result, A input, Reduced reduced) {
+                for (int i = 0; i < rfs.length; i++) {
+                    if (result.reduced[i])
+                        continue;
+                    result.branchReduced.set(false);
+                    result.results[i] = branch(i).apply(result.results[i], input, result.branchReduced);
+                    if (result.branchReduced.get()) {
+                        result.reduced[i] = true;
+                        result.live--;
+                    }
+                }
+                if (result.live == 0)
+                    reduced.set(true);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Creates a reducing function that keeps the n greatest inputs by
+     * comparator in a bounded heap. Partial results, e.g. of fold, can be
+     * combined with TopN#merge.
+     * @param n the number of inputs to keep
+     * @param comparator the ordering of inputs
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    public static <A> IReducingFunction<TopN<A>, A> greatest(int n, Comparator<? super A> comparator) {
+        return ranking(new TopN<A>(n, comparator));
+    }
+
+    /**
+     * Creates a reducing function that keeps the n inputs with the greatest
+     * keys in a bounded heap of primitive keys. See greatest(int, Comparator).
+     * @param n the number of inputs to keep
+     * @param key a function that returns the key of an input
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    public static <A> IReducingFunction<TopN<A>, A> greatest(int n, ToLongFunction<? super A> key) {
+        return ranking(new TopN<A>(n, key, false));
+    }
+
+    /**
+     * Creates a reducing function that keeps the n least inputs by
+     * comparator. See greatest(int, Comparator).
+     * @param n the number of inputs to keep
+     * @param comparator the ordering of inputs
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    public static <A> IReducingFunction<TopN<A>, A> least(int n, Comparator<? super A> comparator) {
+        return ranking(new TopN<A>(n, Collections.reverseOrder(comparator)));
+    }
+
+    /**
+     * Creates a reducing function that keeps the n inputs with the least
+     * keys. See greatest(int, ToLongFunction).
+     * @param n the number of inputs to keep
+     * @param key a function that returns the key of an input
+     * @param <A> the type of inputs
+     * @return a new reducing function
+     */
+    public static <A> IReducingFunction<TopN<A>, A> least(int n, ToLongFunction<? super A> key) {
+        return ranking(new TopN<A>(n, key, true));
+    }
+
+    private static <A> IReducingFunction<TopN<A>, A> ranking(final TopN<A> prototype) {
+        return new AReducingFunction<TopN<A>, A>() {
+            @Override
+            public TopN<A> apply() {
+                return prototype.empty();
+            }
+
+            @Override
+            public TopN<A> apply(TopN<A> result, A input, Reduced reduced) {
+                result.add(input);
+                return result;
+            }
+        };
+    }
 
     // *** transducers
 
@@ -133,17 +798,7 @@ public class Fns {
      * @return a new transducer
      */
     public static <A, B> ITransducer<A, B> map(final Function<B, A> f) {
-        return new ITransducer<A, B>() {
-            @Override
-            public <R> IReducingFunction<R, B> apply(final IReducingFunction<R,? super A> rf) {
-                return new AReducingFunctionOn<R, A, B>(rf) {
-                    @Override
-                    public R apply(R result, B input, AtomicBoolean reduced) {
-                        return rf.apply(result, f.apply(input), reduced);
-                    }
-                };
-            }
-        };
+        return StatelessTransducer.map(f);
     }
 
     /**
@@ -155,19 +810,7 @@ public class Fns {
      * @return a new transducer
      */
     public static <A> ITransducer<A, A> filter(final Predicate<A> p) {
-        return new ITransducer<A, A>() {
-            @Override
-            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
-                return new AReducingFunctionOn<R, A, A>(rf) {
-                    @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
-                        if (p.test(input))
-                            return rf.apply(result, input, reduced);
-                        return result;
-                    }
-                };
-            }
-        };
+        return StatelessTransducer.filter(p);
     }
 
     /**
@@ -183,8 +826,122 @@ public class Fns {
             public <R> IReducingFunction<R, B> apply(final IReducingFunction<R, ? super A> rf) {
                 return new AReducingFunctionOn<R, A, B>(rf) {
                     @Override
-                    public R apply(R result, B input, AtomicBoolean reduced) {
-                        return reduce(rf, result, input, reduced);
+                    public R apply(R result, B input, Reduced reduced) {
+                        return Impl.steps(rf, result, input, reduced);
+                    }
+                };
+            }
+
+            @Override
+            public boolean isStateless() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function using
+     * a composition of map and cat.
+     * @param f a mapping function from one type to another (can be the same type)
+     * @param <A> input type of input reducing function
+     * @param <B> output type of output reducing function and iterable of input type
+     *           of input reducing function
+     * @param <C> input type of output reducing function
+     * @return a new transducer
+     */
+    public static <A, B extends Iterable<A>, C> ITransducer<A, C> mapcat(Function<C, B> f) {
+        return map(f).comp(Fns.<A, B>cat());
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * predicate to each input and not processing those inputs for which the
+     * predicate is true.
+     * @param p a predicate function
+     * @param <A> input type of input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> remove(final Predicate<A> p) {
+        return StatelessTransducer.filter(p.negate());
+    }
+
+    /**
+     * Creates a transducer that hands each input to every one of xfs and
+     * processes the outputs of all of them, interleaved in the order they
+     * are produced: for each input, the outputs of the first transducer,
+     * then those of the second, and so on. A transducer that signals
+     * reduced, e.g. take, gets no more inputs, and the reducing process
+     * stops once all of them have, or as soon as the downstream reducing
+     * function signals reduced. Completion completes each transducer's
+     * reducing function, so stateful ones flush, then completes downstream
+     * once. Once downstream has signalled reduced it gets no more inputs,
+     * from steps or flushes, only its completion.
+     * @param xfs the transducers of the branches
+     * @param <A> the input type of the transformed reducing function
+     * @param <B> the input type of the reducing function to transform
+     * @return a new transducer
+     */
+    @SafeVarargs
+    public static <A, B> ITransducer<B, A> multiplex(final ITransducer<? extends B, A>... xfs) {
+        return new ITransducer<B, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super B> rf) {
+                final Reduced down = new Reduced();
+                final IReducingFunction<R, B> branchRf = new AReducingFunctionOn<R, B, B>(rf) {
+                    @Override
+                    public R apply(R result) {
+                        return result;
+                    }
+
+                    @Override
+                    public R apply(R result, B input, Reduced reduced) {
+                        if (down.get()) {
+                            reduced.set(true);
+                            return result;
+                        }
+                        R ret = rf.apply(result, input, down);
+                        if (down.get())
+                            reduced.set(true);
+                        return ret;
+                    }
+                };
+                @SuppressWarnings({"unchecked", "rawtypes"})
+                final IReducingFunction<R, A>[] branches = new IReducingFunction[xfs.length];
+                for (int i = 0; i < xfs.length; i++)
+                    branches[i] = xfs[i].apply(branchRf);
+                return new AReducingFunctionOn<R, B, A>(rf) {
+                    final boolean[] done = new boolean[branches.length];
+                    final Reduced branchReduced = new Reduced();
+                    int live = branches.length;
+
+                    @Override
+                    public R apply(R result) {
+                        R ret = result;
+                        for (int i = 0; i < branches.length && !down.get(); i++)
+                            ret = branches[i].apply(ret);
+                        return rf.apply(ret);
+                    }
+
+                    @Override
+                    public R apply(R result, A input, Reduced reduced) {
+                        R ret = result;
+                        for (int i = 0; i < branches.length; i++) {
+                            if (done[i])
+                                continue;
+                            branchReduced.set(false);
+                            ret = branches[i].apply(ret, input, branchReduced);
+                            if (down.get()) {
+                                reduced.set(true);
+                                return ret;
+                            }
+                            if (branchReduced.get()) {
+                                done[i] = true;
+                                live--;
+                            }
+                        }
+                        if (live == 0)
+                            reduced.set(true);
+                        return ret;
                     }
                 };
             }
@@ -192,38 +949,80 @@ public class Fns {
     }
 
     /**
-     * Creates a transducer that transforms a reducing function using
-     * a composition of map and cat.
-     * @param f a mapping function from one type to another (can be the same type)
-     * @param <A> input type of input reducing function
-     * @param <B> output type of output reducing function and iterable of input type
-     *           of input reducing function
-     * @param <C> input type of output reducing function
+     * Creates a transducer that transforms a reducing function such that it
+     * keeps the n greatest inputs by comparator in a bounded heap, rather
+     * than all inputs, and processes them, greatest first, when the reducing
+     * process completes.
+     * @param n the number of inputs to keep
+     * @param comparator the ordering of inputs
+     * @param <A> the input type of the input and output reducing functions
      * @return a new transducer
      */
-    public static <A, B extends Iterable<A>, C> ITransducer<A, C> mapcat(Function<C, B> f) {
-        return map(f).comp(Fns.<A, B>cat());
+    public static <A> ITransducer<A, A> topN(int n, Comparator<? super A> comparator) {
+        return ranked(new TopN<A>(n, comparator));
     }
 
     /**
-     * Creates a transducer that transforms a reducing function by applying a
-     * predicate to each input and not processing those inputs for which the
-     * predicate is true.
-     * @param p a predicate function
-     * @param <A> input type of input and output reducing functions
+     * Creates a transducer that keeps the n inputs with the greatest keys in a
+     * bounded heap of primitive keys and processes them, greatest first, when
+     * the reducing process completes.
+     * @param n the number of inputs to keep
+     * @param key a function that returns the key of an input
+     * @param <A> the input type of the input and output reducing functions
      * @return a new transducer
      */
-    public static <A> ITransducer<A, A> remove(final Predicate<A> p) {
+    public static <A> ITransducer<A, A> topN(int n, ToLongFunction<? super A> key) {
+        return ranked(new TopN<A>(n, key, false));
+    }
+
+    /**
+     * Creates a transducer that keeps the n least inputs by comparator and
+     * processes them, least first, when the reducing process completes.
+     * @param n the number of inputs to keep
+     * @param comparator the ordering of inputs
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> bottomN(int n, Comparator<? super A> comparator) {
+        return ranked(new TopN<A>(n, Collections.reverseOrder(comparator)));
+    }
+
+    /**
+     * Creates a transducer that keeps the n inputs with the least keys and
+     * processes them, least first, when the reducing process completes.
+     * @param n the number of inputs to keep
+     * @param key a function that returns the key of an input
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> bottomN(int n, ToLongFunction<? super A> key) {
+        return ranked(new TopN<A>(n, key, true));
+    }
+
+    private static <A> ITransducer<A, A> ranked(final TopN<A> prototype) {
         return new ITransducer<A, A>() {
             @Override
             public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
                 return new AReducingFunctionOn<R, A, A>(rf) {
+                    final TopN<A> top = prototype.empty();
+
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
-                        if (!p.test(input))
-                            return rf.apply(result, input, reduced);
+                    public R apply(R result, A input, Reduced reduced) {
+                        top.add(input);
                         return result;
                     }
+
+                    @Override
+                    public R apply(R result) {
+                        R ret = result;
+                        Reduced reduced = new Reduced();
+                        for (A a : top.toList()) {
+                            ret = rf.apply(ret, a, reduced);
+                            if (reduced.get())
+                                break;
+                        }
+                        return rf.apply(ret);
+                    }
                 };
             }
         };
@@ -243,7 +1042,7 @@ public class Fns {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     long taken = 0;
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         R ret = result;
                         if (taken < n) {
                             ret = rf.apply(result, input, reduced);
@@ -272,7 +1071,7 @@ public class Fns {
             public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         R ret = result;
                         if (p.test(input)) {
                             ret = rf.apply(result, input, reduced);
@@ -300,7 +1099,7 @@ public class Fns {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     long dropped = 0;
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         R ret = result;
                         if (dropped < n) {
                             dropped++;
@@ -330,7 +1129,7 @@ public class Fns {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     boolean drop = true;
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         if (drop && p.test(input)) {
                             return result;
                         }
@@ -356,7 +1155,7 @@ public class Fns {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     long nth = 0;
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         return ((nth++ % n) == 0) ? rf.apply(result, input, reduced) : result;
                     }
                 };
@@ -392,20 +1191,68 @@ public class Fns {
      * @return a new transducer
      */
     public static <A> ITransducer<A, A> keep(final Function<A, A> f) {
-        return new ITransducer<A, A>() {
-            @Override
-            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
-                return new AReducingFunctionOn<R, A, A>(rf) {
-                    @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
-                        A _input = f.apply(input);
-                        if (_input != null)
-                            return rf.apply(result, _input, reduced);
-                        return result;
-                    }
-                };
-            }
-        };
+        return StatelessTransducer.keep(f);
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * mapping function to each input, remembering the results for up to
+     * maxEntries distinct inputs in a new Cache, so repeated inputs are not
+     * mapped again. f must be a pure function of its input.
+     * @param f a mapping function from one type to another (can be the same type)
+     * @param maxEntries the maximum number of results remembered
+     * @param <A> input type of input reducing function
+     * @param <B> input type of output reducing function
+     * @return a new transducer
+     */
+    public static <A, B> ITransducer<A, B> mapCached(final Function<B, A> f, int maxEntries) {
+        return mapCached(f, new Cache<B, A>(maxEntries));
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * mapping function to each input, remembering results in cache, which may
+     * be shared with other transducers and threads. f must be a pure function
+     * of its input. Like map, the transducer is stateless and fuses with
+     * adjacent stateless stages.
+     * @param f a mapping function from one type to another (can be the same type)
+     * @param cache the cache of results of f
+     * @param <A> input type of input reducing function
+     * @param <B> input type of output reducing function
+     * @return a new transducer
+     */
+    public static <A, B> ITransducer<A, B> mapCached(final Function<B, A> f, final Cache<B, A> cache) {
+        return map(b -> cache.get(b, f));
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * function to each input and processing the resulting value, ignoring
+     * values that are null, remembering the results, null or not, for up to
+     * maxEntries distinct inputs in a new Cache. f must be a pure function of
+     * its input.
+     * @param f a function for processing inputs
+     * @param maxEntries the maximum number of results remembered
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> keepCached(final Function<A, A> f, int maxEntries) {
+        return keepCached(f, new Cache<A, A>(maxEntries));
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * function to each input and processing the resulting value, ignoring
+     * values that are null, remembering the results in cache, which may be
+     * shared with other transducers and threads. f must be a pure function
+     * of its input.
+     * @param f a function for processing inputs
+     * @param cache the cache of results of f
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> keepCached(final Function<A, A> f, final Cache<A, A> cache) {
+        return keep(a -> cache.get(a, f));
     }
 
     /**
@@ -423,7 +1270,7 @@ public class Fns {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     long n = 0;
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         n++;
                         A _input = f.apply(n, input);
                         if (_input != null)
@@ -449,7 +1296,7 @@ public class Fns {
                 return new AReducingFunctionOn<R, A, A>(rf) {
                     A prior = null;
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         R ret = result;
                         if (prior != input) {
                             prior = input;
@@ -462,15 +1309,218 @@ public class Fns {
         };
     }
 
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * only the first occurrence of each input, by equals, is processed.
+     * Every distinct input is remembered; see distinct(Distinct) to bound
+     * memory.
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> distinct() {
+        return distinct(Distinct.exact());
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * only the first occurrence of each input is processed, remembering
+     * inputs as mode specifies: exactly, by equals, or in a fixed-size Bloom
+     * filter that may drop some new inputs. Each reducing function the
+     * transducer returns starts with an empty set. An approximate mode keys
+     * objects by hash code, so hash-code collisions add to its error at large
+     * sizes (see Distinct); distinct(Distinct, ToLongFunction) takes a wider
+     * key.
+     * @param mode an exact or approximate mode
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> distinct(final Distinct mode) {
+        if (!mode.isExact())
+            return distinct(mode, (A a) -> a == null ? 0 : a.hashCode());
+        return new ITransducer<A, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
+                return new AReducingFunctionOn<R, A, A>(rf) {
+                    final Distinct.Filter seen = mode.objects();
+                    @Override
+                    public R apply(R result, A input, Reduced reduced) {
+                        if (seen.add(input))
+                            return rf.apply(result, input, reduced);
+                        return result;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * only the first input with each key is processed, remembering keys as
+     * mode specifies. Inputs with equal keys are duplicates of each other,
+     * so a key such as a 64-bit hash of the input keeps the error of an
+     * approximate mode at the Bloom filter's own rate.
+     * @param mode an exact or approximate mode
+     * @param key a function of an input to its key
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> distinct(final Distinct mode, final ToLongFunction<? super A> key) {
+        return new ITransducer<A, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
+                return new AReducingFunctionOn<R, A, A>(rf) {
+                    final Distinct.Filter seen = mode.longs();
+                    @Override
+                    public R apply(R result, A input, Reduced reduced) {
+                        if (seen.add(key.applyAsLong(input)))
+                            return rf.apply(result, input, reduced);
+                        return result;
+                    }
+                };
+            }
+        };
+    }
+
     /**
      * Creates a transducer that transforms a reducing function such that
      * it has the specified probability of processing each input.
+     * Draws from the calling thread's ThreadLocalRandom, so it can be
+     * folded in parallel without contention; see randomSample(double, long)
+     * for reproducible samples.
      * @param prob the probability between expressed as a value between 0 and 1.
      * @param <A> the input type of the input and output reducing functions
      * @return a new transducer
      */
     public static <A> ITransducer<A, A> randomSample(final Double prob) {
-        return filter(a ->  Math.random() < prob);
+        return filter(a -> ThreadLocalRandom.current().nextDouble() < prob);
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * it has the specified probability of processing each input, drawing
+     * from a SplittableRandom seeded with seed, so every reducing function
+     * the transducer returns selects the same positions. Rather than one
+     * draw per input, it draws the geometrically distributed number of
+     * inputs to skip before the next selected one, so the random number
+     * generator is only called once per selected input.
+     * @param prob the probability of processing each input, between 0 and 1
+     * @param seed the seed of the random number generator
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> randomSample(final double prob, final long seed) {
+        return new ITransducer<A, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
+                return new AReducingFunctionOn<R, A, A>(rf) {
+                    final SplittableRandom random = new SplittableRandom(seed);
+                    final double log1mp = Math.log1p(-prob);
+                    long skip = skip();
+
+                    long skip() {
+                        if (prob >= 1)
+                            return 0;
+                        if (prob <= 0)
+                            return Long.MAX_VALUE;
+                        return (long) (Math.log(1 - random.nextDouble()) / log1mp);
+                    }
+
+                    @Override
+                    public R apply(R result, A input, Reduced reduced) {
+                        if (skip > 0) {
+                            skip--;
+                            return result;
+                        }
+                        skip = skip();
+                        return rf.apply(result, input, reduced);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that it
+     * keeps a uniform random sample of k inputs, or all inputs if there are
+     * fewer, and processes the sample, in no particular order, when the
+     * reducing process completes. Memory is bounded by k however long the
+     * input. Uses Li's Algorithm L, which draws the number of inputs to skip
+     * before the next one enters the sample, so most inputs cost no random
+     * draw. Each reducing function the transducer returns is seeded from
+     * ThreadLocalRandom, so every reduction draws a different sample.
+     * @param k the size of the sample
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> reservoirSample(final int k) {
+        return reservoirSample(k, false, 0);
+    }
+
+    /**
+     * Creates a transducer that keeps a uniform random sample of k inputs,
+     * drawing from a SplittableRandom seeded with seed, so every reducing
+     * function the transducer returns keeps the same positions. See
+     * reservoirSample(int).
+     * @param k the size of the sample
+     * @param seed the seed of the random number generator
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<A, A> reservoirSample(final int k, final long seed) {
+        return reservoirSample(k, true, seed);
+    }
+
+    private static <A> ITransducer<A, A> reservoirSample(final int k, final boolean seeded, final long seed) {
+        if (k < 1)
+            throw new IllegalArgumentException("sample size must be positive: " + k);
+        return new ITransducer<A, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super A> rf) {
+                return new AReducingFunctionOn<R, A, A>(rf) {
+                    final SplittableRandom random = new SplittableRandom(seeded ? seed : ThreadLocalRandom.current().nextLong());
+                    final Object[] sample = new Object[k];
+                    int size = 0;
+                    double w;
+                    long skip;
+
+                    double draw() {
+                        return 1 - random.nextDouble();
+                    }
+
+                    void next() {
+                        w *= Math.exp(Math.log(draw()) / k);
+                        skip = (long) (Math.log(draw()) / Math.log1p(-w));
+                    }
+
+                    @Override
+                    public R apply(R result, A input, Reduced reduced) {
+                        if (size < k) {
+                            sample[size++] = input;
+                            if (size == k) {
+                                w = 1;
+                                next();
+                            }
+                        } else if (skip > 0) {
+                            skip--;
+                        } else {
+                            sample[random.nextInt(k)] = input;
+                            next();
+                        }
+                        return result;
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public R apply(R result) {
+                        R ret = result;
+                        Reduced reduced = new Reduced();
+                        for (int i = 0; i < size && !reduced.get(); i++)
+                            ret = rf.apply(ret, (A) sample[i], reduced);
+                        return rf.apply(ret);
+                    }
+                };
+            }
+        };
     }
 
     /**
@@ -479,7 +1529,8 @@ public class Fns {
      * by gathering series of inputs for which the provided partitioning function returns
      * the same value, only forwarding them to the next reducing function when the value
      * the partitioning function returns for a given input is different from the value
-     * returned for the previous input.
+     * returned for the previous input. Each partition is a new list that is handed
+     * over, not copied, and may be kept downstream.
      * @param f the partitioning function
      * @param <A> the input type of the input and output reducing functions
      * @param <P> the type returned by the partitioning function
@@ -489,39 +1540,34 @@ public class Fns {
         return new ITransducer<Iterable<A>, A>() {
             @Override
             public <R> IReducingFunction<R, A> apply(final IReducingFunction<R, ? super Iterable<A>> rf) {
-                return new IReducingFunction<R, A>() {
+                return new AReducingFunctionOn<R, Iterable<A>, A>(rf) {
                     List<A> part = new ArrayList<A>();
                     Object mark = new Object();
                     Object prior = mark;
 
-                    @Override
-                    public R apply() {
-                        return rf.apply();
-                    }
-
                     @Override
                     public R apply(R result) {
                         R ret = result;
                         if (!part.isEmpty()) {
-                            List<A> copy = new ArrayList<A>(part);
-                            part.clear();
-                            ret = rf.apply(result, copy, new AtomicBoolean());
+                            List<A> full = part;
+                            part = new ArrayList<A>();
+                            ret = rf.apply(result, full, new Reduced());
                         }
                         return rf.apply(ret);
                     }
 
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
+                    public R apply(R result, A input, Reduced reduced) {
                         P val = f.apply(input);
                         if ((prior == mark) || (prior.equals(val))) {
                             prior = val;
                             part.add(input);
                             return result;
                         } else {
-                            List<A> copy = new ArrayList<A>(part);
+                            List<A> full = part;
                             prior = val;
-                            part.clear();
-                            R ret = rf.apply(result, copy, reduced);
+                            part = new ArrayList<A>(full.size());
+                            R ret = rf.apply(result, full, reduced);
                             if (!reduced.get()) {
                                 part.add(input);
                             }
@@ -538,7 +1584,8 @@ public class Fns {
      * iterables of input into a reducing function that processes individual inputs
      * by gathering series of inputs into partitions of a given size, only forwarding
      * them to the next reducing function when enough inputs have been accrued. Processes
-     * any remaining buffered inputs when the reducing process completes.
+     * any remaining buffered inputs when the reducing process completes. Each partition
+     * is a new list that is handed over, not copied, and may be kept downstream.
      * @param n the size of each partition
      * @param <A> the input type of the input and output reducing functions
      * @return a new transducer
@@ -548,32 +1595,185 @@ public class Fns {
         return new ITransducer<Iterable<A>, A>() {
             @Override
             public <R> IReducingFunction<R, A> apply(final IReducingFunction<R, ? super Iterable<A>> rf) {
-                return new IReducingFunction<R, A>() {
+                return new AReducingFunctionOn<R, Iterable<A>, A>(rf) {
                     List<A> part = new ArrayList<A>(n);
 
                     @Override
-                    public R apply() {
-                        return rf.apply();
+                    public R apply(R result) {
+                        R ret = result;
+                        if (!part.isEmpty()) {
+                            List<A> full = part;
+                            part = new ArrayList<A>(n);
+                            ret = rf.apply(result, full, new Reduced());
+                        }
+                        return rf.apply(ret);
+                    }
+
+                    @Override
+                    public R apply(R result, A input, Reduced reduced) {
+                        part.add(input);
+                        if (n == part.size()) {
+                            List<A> full = part;
+                            part = new ArrayList<A>(n);
+                            return rf.apply(result, full, reduced);
+                        }
+                        return result;
                     }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that gathers inputs into sliding windows of n inputs,
+     * starting a new window every step inputs, like Clojure's partition-all with a
+     * step. Inputs are kept in a ring buffer of n inputs, and each window is a view
+     * of it (see Window), so emitting a window copies nothing. If step is larger
+     * than n, the inputs between windows are dropped. Processes the remaining,
+     * partial windows when the reducing process completes.
+     * @param n the number of inputs in each window
+     * @param step the number of inputs between the starts of consecutive windows
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<Window<A>, A> sliding(int n, int step) {
+        return Windows.windows(n, step, null);
+    }
+
+    /**
+     * Creates a transducer that aggregates the values of sliding windows of n
+     * inputs, starting a new window every step inputs (see sliding). Count, sum,
+     * minimum and maximum are maintained incrementally as inputs enter and leave
+     * the window, so each input costs O(1) amortized whatever the window size.
+     * @param n the number of inputs in each window
+     * @param step the number of inputs between the starts of consecutive windows
+     * @param value a function that returns the value of an input to aggregate
+     * @param <A> the input type of the input reducing function
+     * @return a new transducer
+     */
+    public static <A> ITransducer<WindowStats, A> slidingStats(int n, int step, ToDoubleFunction<? super A> value) {
+        return Windows.stats(n, step, null, value);
+    }
+
+    /**
+     * Creates a transducer that gathers inputs into tumbling event-time windows:
+     * consecutive, non-overlapping intervals [k * width, (k + 1) * width) of the
+     * timestamps returned by time. Timestamps must not decrease; an input with a
+     * timestamp before the current window is dropped. A window is processed when
+     * the first input past its end arrives, empty windows are skipped, and the
+     * last window is processed when the reducing process completes. Each window
+     * is a view of the transducer's buffer (see Window).
+     * @param width the length of each window, in the units of time
+     * @param time a function that returns the timestamp of an input
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<Window<A>, A> tumbling(long width, ToLongFunction<? super A> time) {
+        return Windows.windows(width, width, time);
+    }
+
+    /**
+     * Creates a transducer that aggregates the values of tumbling event-time
+     * windows (see tumbling) incrementally, at O(1) per input.
+     * @param width the length of each window, in the units of time
+     * @param time a function that returns the timestamp of an input
+     * @param value a function that returns the value of an input to aggregate
+     * @param <A> the input type of the input reducing function
+     * @return a new transducer
+     */
+    public static <A> ITransducer<WindowStats, A> tumblingStats(long width, ToLongFunction<? super A> time,
+                                                              ToDoubleFunction<? super A> value) {
+        return Windows.stats(width, width, time, value);
+    }
+
+    /**
+     * Creates a transducer that gathers inputs into hopping event-time windows:
+     * intervals [k * advance, k * advance + width) of the timestamps returned by
+     * time, which overlap when advance is less than width. Otherwise behaves like
+     * tumbling; every window that holds inputs is processed, so the last inputs
+     * appear in several windows processed when the reducing process completes.
+     * @param width the length of each window, in the units of time
+     * @param advance the distance between the starts of consecutive windows
+     * @param time a function that returns the timestamp of an input
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<Window<A>, A> hopping(long width, long advance, ToLongFunction<? super A> time) {
+        return Windows.windows(width, advance, time);
+    }
+
+    /**
+     * Creates a transducer that aggregates the values of hopping event-time
+     * windows (see hopping) incrementally: count and sum are updated as inputs
+     * enter and leave the window and minimum and maximum are kept in monotonic
+     * deques, so each input costs O(1) amortized however much windows overlap.
+     * @param width the length of each window, in the units of time
+     * @param advance the distance between the starts of consecutive windows
+     * @param time a function that returns the timestamp of an input
+     * @param value a function that returns the value of an input to aggregate
+     * @param <A> the input type of the input reducing function
+     * @return a new transducer
+     */
+    public static <A> ITransducer<WindowStats, A> hoppingStats(long width, long advance, ToLongFunction<? super A> time,
+                                                             ToDoubleFunction<? super A> value) {
+        return Windows.stats(width, advance, time, value);
+    }
+
+    /**
+     * Creates a transducer that gathers inputs into chunks of a given size, like
+     * partitionAll, but in array-backed Chunks whose array is allocated at exactly
+     * n elements and handed downstream without copying. Processes any remaining
+     * buffered inputs when the reducing process completes.
+     * @param n the size of each chunk
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<Chunk<A>, A> chunked(final int n) {
+        return chunked(n, 0);
+    }
+
+    /**
+     * Creates a transducer that gathers inputs into chunks of a given size, like
+     * chunked(int), and recycles chunks that downstream has released (see
+     * Chunk#release). Each reducing function made by the transducer keeps up to
+     * pooled released chunks for reuse, so a pipeline whose downstream releases
+     * each chunk when done with it, e.g. after writing a batch, allocates only a
+     * few chunks in all. Chunks may be released from any thread.
+     * @param n the size of each chunk
+     * @param pooled the maximum number of released chunks kept for reuse, 0 for none
+     * @param <A> the input type of the input and output reducing functions
+     * @return a new transducer
+     */
+    public static <A> ITransducer<Chunk<A>, A> chunked(final int n, final int pooled) {
+        if (n < 1)
+            throw new IllegalArgumentException("chunk size must be positive: " + n);
+        if (pooled < 0)
+            throw new IllegalArgumentException("pool size must not be negative: " + pooled);
+        return new ITransducer<Chunk<A>, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(final IReducingFunction<R, ? super Chunk<A>> rf) {
+                return new AReducingFunctionOn<R, Chunk<A>, A>(rf) {
+                    final Queue<Chunk<A>> pool = pooled == 0 ? null : new ArrayBlockingQueue<Chunk<A>>(pooled);
+                    Chunk<A> part = Chunk.take(n, pool);
 
                     @Override
                     public R apply(R result) {
                         R ret = result;
                         if (!part.isEmpty()) {
-                            List<A> copy = new ArrayList<A>(part);
-                            part.clear();
-                            ret = rf.apply(result, copy, new AtomicBoolean());
+                            Chunk<A> full = part;
+                            part = Chunk.take(n, pool);
+                            ret = rf.apply(result, full, new Reduced());
                         }
                         return rf.apply(ret);
                     }
 
                     @Override
-                    public R apply(R result, A input, AtomicBoolean reduced) {
-                        part.add(input);
-                        if (n == part.size()) {
-                            List<A> copy = new ArrayList<A>(part);
-                            part.clear();
-                            return rf.apply(result, copy, reduced);
+                    public R apply(R result, A input, Reduced reduced) {
+                        part.append(input);
+                        if (part.isFull()) {
+                            Chunk<A> full = part;
+                            part = Chunk.take(n, pool);
+                            return rf.apply(result, full, reduced);
                         }
                         return result;
                     }
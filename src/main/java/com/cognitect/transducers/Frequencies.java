@@ -0,0 +1,115 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * Counts of keys, the result of the Fns#frequencies reducing function. Counts
+ * are primitive longs in an open-addressing table, so counting an input
+ * allocates nothing once its key is in the table.
+ * @param <K> the type of keys
+ */
+public final class Frequencies<K> {
+
+    private final Table table = new Table(16);
+
+    private static final class Table extends KeyTable {
+        long[] counts;
+
+        Table(int capacity) {
+            super(capacity);
+            counts = new long[capacity()];
+        }
+
+        @Override
+        void relocate(int[] dest, int capacity) {
+            long[] old = counts;
+            counts = new long[capacity];
+            for (int i = 0; i < dest.length; i++) {
+                if (dest[i] >= 0)
+                    counts[dest[i]] = old[i];
+            }
+        }
+    }
+
+    /**
+     * Adds n to the count of key.
+     * @param key a key, which may be null
+     * @param n the amount to add
+     */
+    public void add(K key, long n) {
+        int i = table.slot(key);
+        table.counts[i < 0 ? ~i : i] += n;
+    }
+
+    /**
+     * Returns the count of key, 0 if it has not been counted.
+     * @param key a key
+     * @return the count
+     */
+    public long get(Object key) {
+        int i = table.find(key);
+        return i < 0 ? 0 : table.counts[i];
+    }
+
+    /**
+     * Returns the number of distinct keys counted.
+     * @return the number of keys
+     */
+    public int size() {
+        return table.size();
+    }
+
+    /**
+     * Calls action with each key and its count.
+     * @param action the action to perform
+     */
+    @SuppressWarnings("unchecked")
+    public void forEach(ObjLongConsumer<? super K> action) {
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.used(i))
+                action.accept((K) table.key(i), table.counts[i]);
+        }
+    }
+
+    /**
+     * Adds the counts of other to these counts, e.g. to combine the partial
+     * results of Fns#fold.
+     * @param other counts to add
+     * @return this
+     */
+    public Frequencies<K> merge(Frequencies<K> other) {
+        other.forEach(this::add);
+        return this;
+    }
+
+    /**
+     * Returns the counts as a new map.
+     * @return a map of each key to its count
+     */
+    public Map<K, Long> toMap() {
+        final Map<K, Long> ret = new HashMap<K, Long>(size() * 2);
+        forEach(ret::put);
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+}
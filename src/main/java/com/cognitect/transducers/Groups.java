@@ -0,0 +1,205 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.function.BinaryOperator;
+
+/**
+ * The result of the Fns#groupBy reducing function: an unmodifiable map of
+ * each key to the result of reducing the inputs with that key. Results, and
+ * whether the reduction for each key has been stopped by a reduced signal,
+ * are kept in an open-addressing table.
+ * @param <K> the type of keys
+ * @param <V> the type of the result for each key
+ */
+public final class Groups<K, V> extends AbstractMap<K, V> {
+
+    private final Table table = new Table(16);
+
+    /** The flag each key's reducing function is stepped with, one per result so parallel partial results do not share it. */
+    private final Reduced keyReduced = new Reduced();
+
+    /** True if some key is reduced through a transducer that keeps state. */
+    private boolean stateful;
+
+    private static final class Table extends KeyTable {
+        Object[] values;
+        IReducingFunction<?, ?>[] fns;
+        boolean[] reduced;
+
+        Table(int capacity) {
+            super(capacity);
+            values = new Object[capacity()];
+            fns = new IReducingFunction<?, ?>[capacity()];
+            reduced = new boolean[capacity()];
+        }
+
+        @Override
+        void relocate(int[] dest, int capacity) {
+            Object[] oldValues = values;
+            IReducingFunction<?, ?>[] oldFns = fns;
+            boolean[] oldReduced = reduced;
+            values = new Object[capacity];
+            fns = new IReducingFunction<?, ?>[capacity];
+            reduced = new boolean[capacity];
+            for (int i = 0; i < dest.length; i++) {
+                if (dest[i] >= 0) {
+                    values[dest[i]] = oldValues[i];
+                    fns[dest[i]] = oldFns[i];
+                    reduced[dest[i]] = oldReduced[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Steps the reduction for the key of an input. If the key is new, its
+     * reduction gets its own reducing function, xf applied to rf, or rf itself
+     * if xf is null, so stateful transducers keep separate state per key, and
+     * starts with rf's initial value. Inputs for a key whose reduction has
+     * been stopped are ignored.
+     */
+    @SuppressWarnings("unchecked")
+    <A, B> void step(K key, A input, ITransducer<B, A> xf, IReducingFunction<V, ? super B> rf) {
+        int i = table.slot(key);
+        if (i < 0) {
+            i = ~i;
+            table.fns[i] = xf == null ? rf : xf.apply(rf);
+            table.values[i] = rf.apply();
+            stateful |= xf != null && !xf.isStateless();
+        } else if (table.reduced[i]) {
+            return;
+        }
+        keyReduced.set(false);
+        table.values[i] = ((IReducingFunction<V, A>) table.fns[i]).apply((V) table.values[i], input, keyReduced);
+        table.reduced[i] = keyReduced.get();
+    }
+
+    /**
+     * Completes the result of every key with its reducing function.
+     */
+    @SuppressWarnings("unchecked")
+    void complete() {
+        for (int i = 0; i < table.capacity(); i++) {
+            if (table.used(i))
+                table.values[i] = ((IReducingFunction<V, ?>) table.fns[i]).apply((V) table.values[i]);
+        }
+    }
+
+    /**
+     * Returns true if the reduction for key was stopped by a reduced signal.
+     * @param key a key
+     * @return true if reduced
+     */
+    public boolean isReduced(Object key) {
+        int i = table.find(key);
+        return i >= 0 && table.reduced[i];
+    }
+
+    /**
+     * Merges other into these groups, e.g. to combine the partial results of
+     * Fns#fold: keys only in other are added, and the results of keys in both
+     * are combined with combiner, this group's result first. A merged key is
+     * reduced if it was reduced in either. Groups whose keys are reduced
+     * through a transducer that keeps state (see ITransducer#isStateless),
+     * e.g. take or partitionAll, cannot be merged, as that state, such as
+     * a partially filled partition or a count of inputs taken, cannot be
+     * combined; reduce them sequentially instead.
+     * @param other groups to merge
+     * @param combiner a function that combines two results for the same key
+     * @return this
+     * @throws IllegalStateException if either groups has a stateful transducer per key
+     */
+    @SuppressWarnings("unchecked")
+    public Groups<K, V> merge(Groups<K, V> other, BinaryOperator<V> combiner) {
+        if (stateful || other.stateful)
+            throw new IllegalStateException("groups reduced with a stateful transducer per key cannot be merged");
+        Table t = other.table;
+        for (int j = 0; j < t.capacity(); j++) {
+            if (!t.used(j))
+                continue;
+            int i = table.slot(t.key(j));
+            if (i < 0) {
+                i = ~i;
+                table.values[i] = t.values[j];
+                table.fns[i] = t.fns[j];
+            } else {
+                table.values[i] = combiner.apply((V) table.values[i], (V) t.values[j]);
+            }
+            table.reduced[i] |= t.reduced[j];
+        }
+        return this;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public V get(Object key) {
+        int i = table.find(key);
+        return i < 0 ? null : (V) table.values[i];
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return table.find(key) >= 0;
+    }
+
+    @Override
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public Set<Entry<K, V>> entrySet() {
+        return new AbstractSet<Entry<K, V>>() {
+            @Override
+            public Iterator<Entry<K, V>> iterator() {
+                return new Iterator<Entry<K, V>>() {
+                    int next = advance(0);
+
+                    int advance(int i) {
+                        while (i < table.capacity() && !table.used(i))
+                            i++;
+                        return i;
+                    }
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < table.capacity();
+                    }
+
+                    @Override
+                    @SuppressWarnings("unchecked")
+                    public Entry<K, V> next() {
+                        if (!hasNext())
+                            throw new NoSuchElementException();
+                        int i = next;
+                        next = advance(i + 1);
+                        return new SimpleImmutableEntry<K, V>((K) table.key(i), (V) table.values[i]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return table.size();
+            }
+        };
+    }
+}
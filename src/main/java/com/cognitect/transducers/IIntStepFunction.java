@@ -0,0 +1,40 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+
+/**
+ * A reducing step function over int inputs. The int counterpart of
+ * IStepFunction; inputs are never boxed.
+ * @param <R> Type of first argument and return value
+ */
+@FunctionalInterface
+public interface IIntStepFunction<R> {
+    /**
+     * Applies the reducing function to the current result and
+     * the new input, returning a new result.
+     *
+     * A reducing function can indicate that no more input
+     * should be processed by setting the value of reduced to
+     * true. This causes the reduction process to complete,
+     * returning the most recent result.
+     * @param result The current result value
+     * @param input New input to process
+     * @param reduced A boolean value which can be set to true
+     *                to stop the reduction process
+     * @return A new result value
+     */
+     R apply(R result, int input, Reduced reduced);
+}
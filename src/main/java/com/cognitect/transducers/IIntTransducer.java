@@ -0,0 +1,52 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.Objects;
+
+/**
+ * A Transducer that transforms a reducing function of int into another
+ * reducing function of int. The int counterpart of ITransducer; no
+ * input is boxed as it passes from one stage to the next. Use the
+ * bridges in IntFns to cross to and from object reducing functions.
+ */
+@FunctionalInterface
+public interface IIntTransducer {
+    /**
+     * Transforms a reducing function of int into another reducing
+     * function of int.
+     * @param rf The input reducing function
+     * @param <R> The result type of both the input and the output
+     *           reducing functions
+     * @return The transformed reducing function
+     */
+    <R> IIntReducingFunction<R> apply(IIntReducingFunction<R> rf);
+
+    /**
+     * Composes a transducer with another transducer, yielding
+     * a new transducer.
+     * @param right the transducer to compose with this transducer
+     * @return A new composite transducer
+     */
+    default IIntTransducer comp(IIntTransducer right) {
+        Objects.requireNonNull(right);
+        return new IIntTransducer() {
+            @Override
+            public <R> IIntReducingFunction<R> apply(IIntReducingFunction<R> rf) {
+                return IIntTransducer.this.apply(right.apply(rf));
+            }
+        };
+    }
+}
@@ -0,0 +1,35 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+/**
+ * Receives the metrics of each reduction through an instrumented stage when
+ * it completes, e.g. to export them to a metrics library. Listeners are
+ * registered with Instrumentation#addListener and called on the thread that
+ * completes the reduction, so they should be quick.
+ */
+@FunctionalInterface
+public interface IStageListener {
+    /**
+     * Called when a reduction through an instrumented stage completes.
+     * @param stats the running totals of the stage, including this reduction
+     * @param in the number of inputs of this reduction
+     * @param out the number of outputs of this reduction
+     * @param nanos the estimated time this reduction spent in the stage,
+     *              including its completion
+     * @param terminated true if this reduction was stopped early
+     */
+    void completed(StageStats stats, long in, long out, long nanos, boolean terminated);
+}
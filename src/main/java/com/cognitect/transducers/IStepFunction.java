@@ -24,4 +24,30 @@ public interface IStepFunction<R, T> {
      * @return A new result value
      */
      R apply(R result, T input, AtomicBoolean reduced);
+
+    /**
+     * Applies the reducing function to the current result and
+     * the new input, returning a new result, signalling early
+     * termination through a plain Reduced flag instead of an
+     * AtomicBoolean. This is the overload the reduction process
+     * and the transducers in Fns call; implement it to avoid a
+     * volatile read per input.
+     *
+     * The default implementation forwards to the AtomicBoolean
+     * overload, so existing step functions and lambdas keep
+     * working, and copies back any request to stop.
+     * @param result The current result value
+     * @param input New input to process
+     * @param reduced A flag which can be set to true to stop
+     *                the reduction process
+     * @return A new result value
+     */
+    default R apply(R result, T input, Reduced reduced) {
+        AtomicBoolean flag = reduced.atomic();
+        flag.set(reduced.get());
+        R ret = apply(result, input, flag);
+        if (flag.get())
+            reduced.set(true);
+        return ret;
+    }
 }
@@ -35,9 +35,23 @@ public interface ITransducer<B, C> {
      */
     <R> IReducingFunction<R, C> apply(IReducingFunction<R, ? super B> rf);
 
+    /**
+     * Returns true if the reducing functions this transducer produces keep no
+     * state from one input to the next, so that separate instances applied to
+     * consecutive chunks of input yield the same outputs as one instance applied
+     * to all of it. Fns#fold only runs stateless transducers in parallel.
+     * Defaults to false, which is always safe.
+     * @return true if this transducer is stateless
+     */
+    default boolean isStateless() {
+        return false;
+    }
+
     /**
      * Composes a transducer with another transducer, yielding
-     * a new transducer.
+     * a new transducer. Adjacent map, filter, remove and keep
+     * stages from Fns are fused into a single stage, so they
+     * are applied by one reducing function.
      * @param right the transducer to compose with this transducer
      * @param <A> the type of input processed by the reducing function
      *           the composed transducer returns when applied
@@ -45,11 +59,6 @@ public interface ITransducer<B, C> {
      */
     default <A> ITransducer<A, C> comp(ITransducer<A, ? super B> right) {
         Objects.requireNonNull(right);
-        return new ITransducer<A, C>() {
-            @Override
-            public <R> IReducingFunction<R, C> apply(IReducingFunction<R, ? super A> rf) {
-                return ITransducer.this.apply(right.apply(rf));
-            }
-        };
+        return StatelessTransducer.comp(this, right);
     }
 }
@@ -14,13 +14,31 @@
 
 package com.cognitect.transducers;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PrimitiveIterator;
+import java.util.Spliterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BinaryOperator;
+import java.util.function.Consumer;
+import java.util.stream.Collector;
 
 /**
  * Helper functions used to implement transducers.
  */
 public class Impl {
 
+    /** The class of the lists returned by Arrays.asList, which is private. */
+    private static final Class<?> ARRAYS_AS_LIST = Arrays.asList().getClass();
+
     /**
      * Applies given reducing function to current result and each T in input, using
      * the result returned from each reduction step as input to the next step. Returns
@@ -33,7 +51,7 @@ public class Impl {
      * @return the final reduced result
      */
     public static <R, T> R reduce(IReducingFunction<R, ? super T> f, R result, Iterable<T> input) {
-        return reduce(f, result, input, new AtomicBoolean());
+        return reduce(f, result, input, new Reduced());
     }
 
     /**
@@ -43,19 +61,586 @@ public class Impl {
      * @param f a reducing function
      * @param result an initial result value
      * @param input the input to process
-     * @param reduced a boolean flag that can be set to indicate that the reducing process
+     * @param reduced a flag that can be set to indicate that the reducing process
      *                should stop, even though there is still input to process
      * @param <R> the type of the result
      * @param <T> the type of each item in input
      * @return the final reduced result
      */
+    public static <R, T> R reduce(IReducingFunction<R, ? super T> f, R result, Iterable<T> input, Reduced reduced) {
+        return f.apply(steps(f, result, input, reduced));
+    }
+
+    /**
+     * Applies given reducing function to current result and each T in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result. The reduction runs on a plain Reduced flag, and also stops once
+     * reduced is set, e.g. by another thread; reduced is set to true at the end if a
+     * step stopped the reducing process early.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a boolean flag that is set to indicate that the reducing process
+     *                stopped, even though there was still input to process
+     * @param <R> the type of the result
+     * @param <T> the type of each item in input
+     * @return the final reduced result
+     */
     public static <R, T> R reduce(IReducingFunction<R, ? super T> f, R result, Iterable<T> input, AtomicBoolean reduced) {
+        Reduced r = new Reduced();
+        R ret = result;
+        for (T t : input) {
+            ret = f.apply(ret, t, r);
+            if (r.get() || reduced.get())
+                break;
+        }
+        if (r.get())
+            reduced.set(true);
+        return f.apply(ret);
+    }
+
+    /**
+     * Applies given reducing function to current result and each T in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @param <T> the type of each item in input
+     * @return the final reduced result
+     */
+    public static <R, T> R reduce(IReducingFunction<R, ? super T> f, R result, T[] input) {
+        return f.apply(steps(f, result, input, new Reduced()));
+    }
+
+    /**
+     * Applies given reducing function to current result and each T in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @param <T> the type of each item in input
+     * @return the final reduced result
+     */
+    public static <R, T> R reduce(IReducingFunction<R, ? super T> f, R result, Spliterator<T> input) {
+        return f.apply(steps(f, result, input, new Reduced()));
+    }
+
+    /**
+     * Applies given step function to current result and each T in input, using
+     * the result returned from each step as input to the next step, until input
+     * is exhausted or reduced is set. Unlike reduce, does not complete the result,
+     * so it can be used to feed a nested input into a reduction in progress.
+     * An ArrayList, or a list from Arrays.asList, is traversed with an indexed
+     * loop rather than an Iterator, throwing ConcurrentModificationException if
+     * its size changes, as its Iterator would; any other list, whose Iterator
+     * may snapshot, lock or check for modification differently, is iterated.
+     * @param f a step function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a flag that can be set to indicate that the reducing process
+     *                should stop, even though there is still input to process
+     * @param <R> the type of the result
+     * @param <T> the type of each item in input
+     * @return the result of the last step
+     */
+    public static <R, T> R steps(IStepFunction<R, ? super T> f, R result, Iterable<T> input, Reduced reduced) {
+        Class<?> c = input.getClass();
+        if (c == ArrayList.class || c == ARRAYS_AS_LIST)
+            return steps(f, result, (List<T>) input, reduced);
         R ret = result;
         for(T t : input) {
             ret = f.apply(ret, t, reduced);
             if (reduced.get())
                 break;
         }
+        return ret;
+    }
+
+    private static <R, T> R steps(IStepFunction<R, ? super T> f, R result, List<T> input, Reduced reduced) {
+        R ret = result;
+        for(int i = 0, n = input.size(); i < n; i++) {
+            ret = f.apply(ret, input.get(i), reduced);
+            if (input.size() != n)
+                throw new ConcurrentModificationException();
+            if (reduced.get())
+                break;
+        }
+        return ret;
+    }
+
+    /**
+     * Applies given step function to current result and each T in input, without
+     * completing the result. See steps(IStepFunction, Object, Iterable, Reduced).
+     * @param f a step function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a flag that can be set to indicate that the reducing process
+     *                should stop, even though there is still input to process
+     * @param <R> the type of the result
+     * @param <T> the type of each item in input
+     * @return the result of the last step
+     */
+    public static <R, T> R steps(IStepFunction<R, ? super T> f, R result, T[] input, Reduced reduced) {
+        R ret = result;
+        for(int i = 0; i < input.length; i++) {
+            ret = f.apply(ret, input[i], reduced);
+            if (reduced.get())
+                break;
+        }
+        return ret;
+    }
+
+    /**
+     * Applies given step function to current result and each T in input, without
+     * completing the result. See steps(IStepFunction, Object, Iterable, Reduced).
+     * Elements are pulled one at a time with tryAdvance, since any step may set
+     * reduced and forEachRemaining cannot be stopped part way; when the reducing
+     * process stops early, input is left positioned after the last element consumed.
+     * @param f a step function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a flag that can be set to indicate that the reducing process
+     *                should stop, even though there is still input to process
+     * @param <R> the type of the result
+     * @param <T> the type of each item in input
+     * @return the result of the last step
+     */
+    public static <R, T> R steps(IStepFunction<R, ? super T> f, R result, Spliterator<T> input, Reduced reduced) {
+        Step<R, T> step = new Step<R, T>(f, result, reduced);
+        while (input.tryAdvance(step) && !reduced.get()) {
+        }
+        return step.result;
+    }
+
+    /**
+     * Consumer that applies a step function, so a Spliterator can be
+     * reduced without allocating per element.
+     */
+    private static final class Step<R, T> implements Consumer<T> {
+        final IStepFunction<R, ? super T> f;
+        final Reduced reduced;
+        R result;
+
+        Step(IStepFunction<R, ? super T> f, R result, Reduced reduced) {
+            this.f = f;
+            this.result = result;
+            this.reduced = reduced;
+        }
+
+        @Override
+        public void accept(T t) {
+            result = f.apply(result, t, reduced);
+        }
+    }
+
+    /**
+     * Applies given reducing function to current result and each int in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(IIntReducingFunction<R> f, R result, int[] input) {
+        return reduce(f, result, input, new Reduced());
+    }
+
+    /**
+     * Applies given reducing function to current result and each int in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a flag that can be set to indicate that the reducing process
+     *                should stop, even though there is still input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(IIntReducingFunction<R> f, R result, int[] input, Reduced reduced) {
+        R ret = result;
+        for(int t : input) {
+            ret = f.apply(ret, t, reduced);
+            if (reduced.get())
+                break;
+        }
         return f.apply(ret);
     }
+
+    /**
+     * Applies given reducing function to current result and each int in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(IIntReducingFunction<R> f, R result, PrimitiveIterator.OfInt input) {
+        R ret = result;
+        Reduced reduced = new Reduced();
+        while (input.hasNext()) {
+            ret = f.apply(ret, input.nextInt(), reduced);
+            if (reduced.get())
+                break;
+        }
+        return f.apply(ret);
+    }
+
+    /**
+     * Applies given reducing function to current result and each long in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(ILongReducingFunction<R> f, R result, long[] input) {
+        return reduce(f, result, input, new Reduced());
+    }
+
+    /**
+     * Applies given reducing function to current result and each long in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a flag that can be set to indicate that the reducing process
+     *                should stop, even though there is still input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(ILongReducingFunction<R> f, R result, long[] input, Reduced reduced) {
+        R ret = result;
+        for(long t : input) {
+            ret = f.apply(ret, t, reduced);
+            if (reduced.get())
+                break;
+        }
+        return f.apply(ret);
+    }
+
+    /**
+     * Applies given reducing function to current result and each long in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(ILongReducingFunction<R> f, R result, PrimitiveIterator.OfLong input) {
+        R ret = result;
+        Reduced reduced = new Reduced();
+        while (input.hasNext()) {
+            ret = f.apply(ret, input.nextLong(), reduced);
+            if (reduced.get())
+                break;
+        }
+        return f.apply(ret);
+    }
+
+    /**
+     * Applies given reducing function to current result and each double in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(IDoubleReducingFunction<R> f, R result, double[] input) {
+        return reduce(f, result, input, new Reduced());
+    }
+
+    /**
+     * Applies given reducing function to current result and each double in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param reduced a flag that can be set to indicate that the reducing process
+     *                should stop, even though there is still input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(IDoubleReducingFunction<R> f, R result, double[] input, Reduced reduced) {
+        R ret = result;
+        for(double t : input) {
+            ret = f.apply(ret, t, reduced);
+            if (reduced.get())
+                break;
+        }
+        return f.apply(ret);
+    }
+
+    /**
+     * Applies given reducing function to current result and each double in input, using
+     * the result returned from each reduction step as input to the next step. Returns
+     * final result.
+     * @param f a reducing function
+     * @param result an initial result value
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @return the final reduced result
+     */
+    public static <R> R reduce(IDoubleReducingFunction<R> f, R result, PrimitiveIterator.OfDouble input) {
+        R ret = result;
+        Reduced reduced = new Reduced();
+        while (input.hasNext()) {
+            ret = f.apply(ret, input.nextDouble(), reduced);
+            if (reduced.get())
+                break;
+        }
+        return f.apply(ret);
+    }
+
+    /**
+     * Folds input in parallel on the common ForkJoinPool. Input is split until
+     * pieces hold no more than n elements; each piece is reduced with a fresh
+     * reducing function from xf, starting from rf's initial value, and the
+     * partial results are merged pairwise, in input order, with combiner. The
+     * merged result is completed once with rf. A reduced signal only stops the
+     * piece that raised it. Callers must ensure xf is stateless.
+     * @param n the largest number of elements reduced sequentially
+     * @param xf a stateless transducer
+     * @param rf a reducing function that provides initial values
+     * @param combiner an associative function that merges two partial results
+     * @param input the input to process
+     * @param <R> the type of the result
+     * @param <A> the type of input expected by rf
+     * @param <B> the type of each item in input
+     * @return the final reduced result
+     */
+    public static <R, A, B> R fold(int n, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                   BinaryOperator<R> combiner, Spliterator<B> input) {
+        return rf.apply(ForkJoinPool.commonPool().invoke(new FoldTask<R, A, B>(n, xf, rf, combiner, input)));
+    }
+
+    private static class FoldTask<R, A, B> extends RecursiveTask<R> {
+        final int n;
+        final ITransducer<A, B> xf;
+        final IReducingFunction<R, ? super A> rf;
+        final BinaryOperator<R> combiner;
+        final Spliterator<B> input;
+
+        FoldTask(int n, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                 BinaryOperator<R> combiner, Spliterator<B> input) {
+            this.n = n;
+            this.xf = xf;
+            this.rf = rf;
+            this.combiner = combiner;
+            this.input = input;
+        }
+
+        @Override
+        protected R compute() {
+            if (input.estimateSize() > n) {
+                Spliterator<B> prefix = input.trySplit();
+                if (prefix != null) {
+                    FoldTask<R, A, B> left = new FoldTask<R, A, B>(n, xf, rf, combiner, prefix);
+                    left.fork();
+                    R right = new FoldTask<R, A, B>(n, xf, rf, combiner, input).compute();
+                    return combiner.apply(left.join(), right);
+                }
+            }
+            return steps(xf.apply(rf), rf.apply(), input, new Reduced());
+        }
+    }
+
+    /**
+     * Transduces each element of input independently on executor, with a fresh
+     * reducing function from xf per element, and reduces the outputs with rf on
+     * the calling thread, in input order. At most parallelism elements are in
+     * flight: the caller waits for the oldest one to finish before submitting
+     * another, so elements that finish early wait in a reorder buffer of at most
+     * parallelism slots. When rf signals reduced, no more elements are submitted
+     * and elements not yet started are skipped. An exception thrown while
+     * transducing an element is rethrown to the caller once all outputs of the
+     * elements before it have been reduced; later elements are skipped. The
+     * caller waits uninterruptibly, and its interrupt status is preserved.
+     * @param parallelism the maximum number of elements in flight
+     * @param xf a transducer applied to each element on its own
+     * @param rf a reducing function
+     * @param input the input to process
+     * @param executor the executor that runs the per-element transductions
+     * @param <R> the type of the result
+     * @param <A> the type of input expected by rf
+     * @param <B> the type of each item in input
+     * @return the final reduced result
+     */
+    public static <R, A, B> R pipeline(int parallelism, ITransducer<A, B> xf, IReducingFunction<R, ? super A> rf,
+                                       Iterable<B> input, Executor executor) {
+        ArrayDeque<PipelineSlot<A, B>> window = new ArrayDeque<PipelineSlot<A, B>>(parallelism);
+        Thread caller = Thread.currentThread();
+        Reduced reduced = new Reduced();
+        R ret = rf.apply();
+        Iterator<B> it = input.iterator();
+        try {
+            while (!reduced.get()) {
+                while (window.size() < parallelism && it.hasNext()) {
+                    PipelineSlot<A, B> slot = new PipelineSlot<A, B>(xf, it.next(), caller);
+                    window.add(slot);
+                    executor.execute(slot);
+                }
+                PipelineSlot<A, B> head = window.poll();
+                if (head == null)
+                    break;
+                ret = steps(rf, ret, head.await(), reduced);
+            }
+        } finally {
+            for (PipelineSlot<A, B> slot : window) {
+                slot.cancelled = true;
+            }
+        }
+        return rf.apply(ret);
+    }
+
+    private static final class PipelineSlot<A, B> implements Runnable {
+        final ITransducer<A, B> xf;
+        final B input;
+        final Thread caller;
+        List<A> outputs;
+        Throwable error;
+        volatile boolean cancelled;
+        volatile boolean done;
+
+        PipelineSlot(ITransducer<A, B> xf, B input, Thread caller) {
+            this.xf = xf;
+            this.input = input;
+            this.caller = caller;
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (!cancelled) {
+                    IReducingFunction<List<A>, B> f = xf.apply(new AReducingFunction<List<A>, A>() {
+                        @Override
+                        public List<A> apply(List<A> result, A a, Reduced reduced) {
+                            result.add(a);
+                            return result;
+                        }
+                    });
+                    outputs = f.apply(f.apply(new ArrayList<A>(), input, new Reduced()));
+                }
+            } catch (Throwable t) {
+                error = t;
+            } finally {
+                done = true;
+                LockSupport.unpark(caller);
+            }
+        }
+
+        /**
+         * Waits for the element to be transduced and returns its outputs, or
+         * rethrows the exception that transducing it threw.
+         */
+        List<A> await() {
+            boolean interrupted = false;
+            while (!done) {
+                LockSupport.park(this);
+                if (Thread.interrupted())
+                    interrupted = true;
+            }
+            if (interrupted)
+                Thread.currentThread().interrupt();
+            if (error instanceof RuntimeException)
+                throw (RuntimeException) error;
+            if (error instanceof Error)
+                throw (Error) error;
+            if (error != null)
+                throw new RuntimeException(error);
+            return outputs;
+        }
+    }
+
+    /**
+     * Returns a Collector that steps each element into a container holding a
+     * result of rf and its own reducing function from xf. Containers are
+     * merged with combiner, which a stream only calls when it runs in
+     * parallel; that is refused for transducers that are not stateless, whose
+     * state cannot be split across containers. The finisher completes the
+     * remaining container once. Once a container's reducing function signals
+     * reduced, the elements still delivered to it are ignored.
+     * @param xf a transducer (or composed transducers)
+     * @param rf a reducing function whose zero-arity apply returns the initial
+     *           result of each container
+     * @param combiner an associative function that merges the results of two
+     *                 containers, the left one's first
+     * @param <R> the type of the result
+     * @param <A> the type of input expected by rf
+     * @param <B> the type of stream elements
+     * @return a new Collector
+     */
+    public static <R, A, B> Collector<B, ?, R> collector(final ITransducer<A, B> xf, final IReducingFunction<R, ? super A> rf,
+                                                         final BinaryOperator<R> combiner) {
+        return Collector.of(() -> new Container<R, B>(xf.apply(rf), rf.apply()),
+                Container::accept,
+                (left, right) -> {
+                    if (!xf.isStateless())
+                        throw new IllegalStateException("a transducer that is not stateless cannot be collected in parallel");
+                    left.result = combiner.apply(left.result, right.result);
+                    return left;
+                },
+                c -> c.f.apply(c.result));
+    }
+
+    private static final class Container<R, B> {
+        final IReducingFunction<R, B> f;
+        final Reduced reduced = new Reduced();
+        R result;
+
+        Container(IReducingFunction<R, B> f, R result) {
+            this.f = f;
+            this.result = result;
+        }
+
+        void accept(B input) {
+            if (!reduced.get())
+                result = f.apply(result, input, reduced);
+        }
+    }
+
+    /**
+     * Returns a reducing function that accumulates inputs with a Collector
+     * into a Collected, and applies the collector's finisher on completion.
+     * @param collector a collector
+     * @param <R> the result type of the collector
+     * @param <A> the type of input
+     * @return a new reducing function
+     */
+    public static <R, A> IReducingFunction<Collected<A, R>, A> fromCollector(final Collector<? super A, ?, R> collector) {
+        return new AReducingFunction<Collected<A, R>, A>() {
+            @Override
+            public Collected<A, R> apply() {
+                return Collected.of(collector);
+            }
+
+            @Override
+            public Collected<A, R> apply(Collected<A, R> result) {
+                result.finish();
+                return result;
+            }
+
+            @Override
+            public Collected<A, R> apply(Collected<A, R> result, A input, Reduced reduced) {
+                result.accept(input);
+                return result;
+            }
+        };
+    }
 }
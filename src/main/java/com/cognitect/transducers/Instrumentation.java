@@ -0,0 +1,284 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Settings and results of the stage instrumentation added by Fns#instrument
+ * and Fns#instrumentStages.
+ *
+ * An instrumented stage wraps the reducing function of its transducer in one
+ * that counts inputs and early terminations and another, downstream of it,
+ * that counts outputs. One input in every sample interval is timed, minus
+ * the time spent downstream, so the stage's own time can be estimated
+ * without reading the clock for every input. Counts are kept in plain
+ * fields of the reducing function and added to the stage's StageStats every
+ * few thousand inputs and on completion. Completion also notifies listeners
+ * and commits a Flight Recorder event, if the JVM has Flight Recorder and a
+ * recording enables com.cognitect.transducers.Stage.
+ *
+ * Whether a stage is instrumented is decided when the transducer is applied
+ * to a reducing function. While instrumentation is disabled, instrumented
+ * transducers apply the transducer they wrap and add nothing to its
+ * reducing functions. It is enabled unless the system property
+ * com.cognitect.transducers.instrument is false.
+ */
+public final class Instrumentation {
+
+    private static final int FLUSH_MASK = 4095;
+
+    private static final StageRecorder RECORDER = recorder();
+
+    private static volatile boolean enabled =
+            !"false".equals(System.getProperty("com.cognitect.transducers.instrument"));
+
+    private static volatile int sampleMask = 15;
+
+    private static final ConcurrentMap<String, StageStats> stages = new ConcurrentHashMap<String, StageStats>();
+
+    private static final List<IStageListener> listeners = new CopyOnWriteArrayList<IStageListener>();
+
+    private Instrumentation() {
+    }
+
+    private static StageRecorder recorder() {
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (StageRecorder) Class.forName(StageRecorder.class.getPackage().getName() + ".StageEvent$Recorder")
+                    .getDeclaredConstructor().newInstance();
+        } catch (Throwable t) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns true if instrumented transducers instrument the reducing
+     * functions they create.
+     * @return true if enabled
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enables or disables instrumentation of reducing functions created from
+     * now on.
+     * @param enable true to enable
+     */
+    public static void setEnabled(boolean enable) {
+        enabled = enable;
+    }
+
+    /**
+     * Sets how often inputs are timed: one in every n, with n rounded up to a
+     * power of two. 1 times every input. Defaults to 16.
+     * @param n the sample interval
+     */
+    public static void setSampleInterval(int n) {
+        if (n < 1)
+            throw new IllegalArgumentException("sample interval must be positive: " + n);
+        sampleMask = Integer.highestOneBit(n * 2 - 1) - 1;
+    }
+
+    /**
+     * Returns the totals of the stage called name, or null if no stage of
+     * that name has been instrumented.
+     * @param name the name of a stage
+     * @return the stage's totals
+     */
+    public static StageStats stats(String name) {
+        return stages.get(name);
+    }
+
+    /**
+     * Returns the totals of every stage instrumented so far.
+     * @return the totals of each stage
+     */
+    public static Collection<StageStats> stats() {
+        return new ArrayList<StageStats>(stages.values());
+    }
+
+    /**
+     * Sets the totals of every stage back to zero.
+     */
+    public static void reset() {
+        for (StageStats s : stages.values())
+            s.reset();
+    }
+
+    /**
+     * Adds a listener for completed reductions through instrumented stages.
+     * @param listener a listener
+     */
+    public static void addListener(IStageListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     * @param listener a listener
+     */
+    public static void removeListener(IStageListener listener) {
+        listeners.remove(listener);
+    }
+
+    static <B, C> ITransducer<B, C> instrument(final String name, final ITransducer<B, C> xf) {
+        final StageStats stats = stages.computeIfAbsent(name, StageStats::new);
+        return new ITransducer<B, C>() {
+            @Override
+            public <R> IReducingFunction<R, C> apply(IReducingFunction<R, ? super B> rf) {
+                if (!enabled)
+                    return xf.apply(rf);
+                Probe<R, B> probe = new Probe<R, B>(rf);
+                return new Stage<R, C>(xf.apply(probe), probe, stats);
+            }
+
+            @Override
+            public boolean isStateless() {
+                return xf.isStateless();
+            }
+        };
+    }
+
+    @SuppressWarnings("unchecked")
+    static <B, C> ITransducer<B, C> instrumentStages(String name, ITransducer<B, C> xf) {
+        List<ITransducer<?, ?>> parts = new ArrayList<ITransducer<?, ?>>();
+        StatelessTransducer.stages(xf, parts);
+        ITransducer<Object, Object> ret = null;
+        for (int i = parts.size() - 1; i >= 0; i--) {
+            ITransducer<Object, Object> part = (ITransducer<Object, Object>) parts.get(i);
+            String stage = name + "[" + i + "]";
+            if (part instanceof StatelessTransducer)
+                stage += ":" + ((StatelessTransducer<?, ?>) part).kind();
+            ITransducer<Object, Object> t = instrument(stage, part);
+            ret = ret == null ? t : new StatelessTransducer.Composite<Object, Object, Object>(t, ret);
+        }
+        return (ITransducer<B, C>) (ITransducer<?, ?>) ret;
+    }
+
+    /**
+     * Counts the outputs of a stage, and times downstream while the stage's
+     * current input is being timed.
+     */
+    private static final class Probe<R, B> extends AReducingFunctionOn<R, B, B> {
+        long out;
+        boolean timing;
+        long nanos;
+
+        Probe(IReducingFunction<R, ? super B> rf) {
+            super(rf);
+        }
+
+        @Override
+        public R apply(R result, B input, Reduced reduced) {
+            out++;
+            if (!timing)
+                return rf.apply(result, input, reduced);
+            long t = System.nanoTime();
+            R ret = rf.apply(result, input, reduced);
+            nanos += System.nanoTime() - t;
+            return ret;
+        }
+
+        @Override
+        public R apply(R result) {
+            long t = System.nanoTime();
+            R ret = rf.apply(result);
+            nanos += System.nanoTime() - t;
+            return ret;
+        }
+    }
+
+    /**
+     * Counts and samples the inputs of a stage.
+     */
+    private static final class Stage<R, C> extends AReducingFunctionOn<R, C, C> {
+        final Probe<R, ?> probe;
+        final StageStats stats;
+        final int mask = sampleMask;
+        final Object event = RECORDER == null ? null : RECORDER.start();
+        long in;
+        long sampled;
+        long sampledNanos;
+        long flushedIn;
+        long flushedOut;
+        long flushedSampled;
+        long flushedNanos;
+        boolean terminated;
+
+        Stage(IReducingFunction<R, ? super C> rf, Probe<R, ?> probe, StageStats stats) {
+            super(rf);
+            this.probe = probe;
+            this.stats = stats;
+        }
+
+        @Override
+        public R apply(R result, C input, Reduced reduced) {
+            R ret;
+            if ((in++ & mask) != 0) {
+                ret = rf.apply(result, input, reduced);
+            } else {
+                probe.timing = true;
+                probe.nanos = 0;
+                long t = System.nanoTime();
+                ret = rf.apply(result, input, reduced);
+                sampledNanos += System.nanoTime() - t - probe.nanos;
+                probe.timing = false;
+                sampled++;
+            }
+            if (reduced.get() && !terminated) {
+                terminated = true;
+                stats.terminations.increment();
+            }
+            if ((in & FLUSH_MASK) == 0)
+                flush();
+            return ret;
+        }
+
+        @Override
+        public R apply(R result) {
+            probe.nanos = 0;
+            long t = System.nanoTime();
+            R ret = rf.apply(result);
+            long completion = System.nanoTime() - t - probe.nanos;
+            flush();
+            stats.completions.increment();
+            stats.completionNanos.add(completion);
+            long nanos = (sampled == 0 ? 0 : (long) ((double) sampledNanos / sampled * in)) + completion;
+            for (IStageListener l : listeners)
+                l.completed(stats, in, probe.out, nanos, terminated);
+            if (event != null)
+                RECORDER.commit(event, stats.name(), in, probe.out, nanos, terminated);
+            return ret;
+        }
+
+        void flush() {
+            stats.in.add(in - flushedIn);
+            stats.out.add(probe.out - flushedOut);
+            stats.sampled.add(sampled - flushedSampled);
+            stats.sampledNanos.add(sampledNanos - flushedNanos);
+            flushedIn = in;
+            flushedOut = probe.out;
+            flushedSampled = sampled;
+            flushedNanos = sampledNanos;
+        }
+    }
+}
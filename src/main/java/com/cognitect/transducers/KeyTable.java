@@ -0,0 +1,132 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+/**
+ * Keys of an open-addressing hash table with linear probing. Subclasses keep
+ * the state of each key in parallel arrays indexed by slot, e.g. a long[] of
+ * counts, so looking a key up and updating its state allocates nothing,
+ * unlike a HashMap with an entry object per key and boxed values. The table
+ * is a power of two in size and at most half full. A null key is stored as
+ * a sentinel.
+ */
+abstract class KeyTable {
+
+    private static final Object NULL = new Object();
+
+    private Object[] keys;
+    private int mask;
+    private int size;
+
+    KeyTable(int capacity) {
+        int n = Integer.highestOneBit(Math.max(capacity, 4) - 1) << 1;
+        keys = new Object[n];
+        mask = n - 1;
+    }
+
+    /**
+     * Allocates the parallel arrays at a new capacity and moves the state of
+     * each old slot i with dest[i] &gt;= 0 to slot dest[i].
+     */
+    abstract void relocate(int[] dest, int capacity);
+
+    private static int hash(Object key) {
+        int h = key.hashCode() * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Returns the slot of key, or -1 if it is absent.
+     */
+    final int find(Object key) {
+        Object k = key == null ? NULL : key;
+        for (int i = hash(k) & mask; ; i = (i + 1) & mask) {
+            Object o = keys[i];
+            if (o == null)
+                return -1;
+            if (o == k || o.equals(k))
+                return i;
+        }
+    }
+
+    /**
+     * Returns the slot of key if it is present. Otherwise adds it, growing the
+     * table if necessary, and returns the bitwise complement of its slot, so
+     * callers can tell a new key, whose state they must initialize, by a
+     * negative result.
+     */
+    final int slot(Object key) {
+        Object k = key == null ? NULL : key;
+        int i = hash(k) & mask;
+        for (; ; i = (i + 1) & mask) {
+            Object o = keys[i];
+            if (o == null)
+                break;
+            if (o == k || o.equals(k))
+                return i;
+        }
+        if ((size + 1) * 2 > keys.length) {
+            grow();
+            return slot(key);
+        }
+        keys[i] = k;
+        size++;
+        return ~i;
+    }
+
+    final int size() {
+        return size;
+    }
+
+    final int capacity() {
+        return keys.length;
+    }
+
+    /**
+     * Returns true if slot i holds a key.
+     */
+    final boolean used(int i) {
+        return keys[i] != null;
+    }
+
+    /**
+     * Returns the key in slot i.
+     */
+    final Object key(int i) {
+        Object k = keys[i];
+        return k == NULL ? null : k;
+    }
+
+    private void grow() {
+        Object[] old = keys;
+        int n = old.length << 1;
+        keys = new Object[n];
+        mask = n - 1;
+        int[] dest = new int[old.length];
+        for (int i = 0; i < old.length; i++) {
+            Object k = old[i];
+            if (k == null) {
+                dest[i] = -1;
+                continue;
+            }
+            int j = hash(k) & mask;
+            while (keys[j] != null)
+                j = (j + 1) & mask;
+            keys[j] = k;
+            dest[i] = j;
+        }
+        relocate(dest, n);
+    }
+}
@@ -0,0 +1,564 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.Arrays;
+import java.util.OptionalLong;
+import java.util.LongSummaryStatistics;
+import java.util.PrimitiveIterator;
+import java.util.function.LongFunction;
+import java.util.function.LongPredicate;
+import java.util.function.LongUnaryOperator;
+import java.util.function.ToLongFunction;
+
+import static com.cognitect.transducers.Impl.reduce;
+
+/**
+ * Transducers, reducing functions and transduction entry points specialized
+ * for long inputs. Nothing here boxes an input: each stage hands a long to
+ * the next. Object and long pipelines meet through the fromObj and toObj
+ * reducing function adapters, which convert once at the boundary, or through
+ * boxed and unboxed, which let a whole transducer cross over.
+ */
+public class LongFns {
+
+    /**
+     * Converts a long step function into a complete reducing function. If passed an
+     * ILongReducingFunction, returns it; otherwise returns a new reducing function that
+     * forwards to the step function, completes with the identity function and throws an
+     * IllegalStateException when asked for an initial value.
+     * @param sf The step function to convert to an ILongReducingFunction, if it is not one already
+     * @param <R> the return type of the step function and reducing function
+     * @return a new reducing function, or the input step function if it is already a reducing function
+     */
+    @SuppressWarnings("unchecked")
+    public static <R> ILongReducingFunction<R> completing(final ILongStepFunction<R> sf) {
+        if (sf instanceof ILongReducingFunction)
+            return (ILongReducingFunction<R>) sf;
+        else
+            return new ALongReducingFunction<R>() {
+                @Override
+                public R apply(R result, long input, Reduced reduced) {
+                    return sf.apply(result, input, reduced);
+                }
+            };
+    }
+
+    /**
+     * Reduces input using transformed reducing function. Reducing function must implement
+     * zero-arity apply that returns initial result to start reducing process.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param input the input to reduce
+     * @param <R> return type
+     * @return result of reducing transformed input
+     */
+    public static <R> R transduce(ILongTransducer xf, ILongReducingFunction<R> rf, long[] input) {
+        return reduce(xf.apply(rf), rf.apply(), input);
+    }
+
+    /**
+     * Reduces input using transformed reducing function. Step function is converted to
+     * reducing function if necessary. Accepts initial value for reducing process as argument.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param init an initial value to start reducing process
+     * @param input the input to reduce
+     * @param <R> return type
+     * @return result of reducing transformed input
+     */
+    public static <R> R transduce(ILongTransducer xf, ILongStepFunction<R> rf, R init, long[] input) {
+        return reduce(xf.apply(completing(rf)), init, input);
+    }
+
+    /**
+     * Reduces input using transformed reducing function. Reducing function must implement
+     * zero-arity apply that returns initial result to start reducing process.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param input the input to reduce, e.g. from a LongStream
+     * @param <R> return type
+     * @return result of reducing transformed input
+     */
+    public static <R> R transduce(ILongTransducer xf, ILongReducingFunction<R> rf, PrimitiveIterator.OfLong input) {
+        return reduce(xf.apply(rf), rf.apply(), input);
+    }
+
+    /**
+     * Reduces input using transformed reducing function. Step function is converted to
+     * reducing function if necessary. Accepts initial value for reducing process as argument.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param init an initial value to start reducing process
+     * @param input the input to reduce, e.g. from a LongStream
+     * @param <R> return type
+     * @return result of reducing transformed input
+     */
+    public static <R> R transduce(ILongTransducer xf, ILongStepFunction<R> rf, R init, PrimitiveIterator.OfLong input) {
+        return reduce(xf.apply(completing(rf)), init, input);
+    }
+
+    // *** transducers
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a mapping
+     * function to each input.
+     * @param f a mapping function
+     * @return a new transducer
+     */
+    public static ILongTransducer map(final LongUnaryOperator f) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        return rf.apply(result, f.applyAsLong(input), reduced);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * predicate to each input and processing only those inputs for which the
+     * predicate is true.
+     * @param p a predicate function
+     * @return a new transducer
+     */
+    public static ILongTransducer filter(final LongPredicate p) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        if (p.test(input))
+                            return rf.apply(result, input, reduced);
+                        return result;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function by applying a
+     * predicate to each input and not processing those inputs for which the
+     * predicate is true.
+     * @param p a predicate function
+     * @return a new transducer
+     */
+    public static ILongTransducer remove(final LongPredicate p) {
+        return filter(p.negate());
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * it only processes n inputs, then the reducing process stops.
+     * @param n the number of inputs to process
+     * @return a new transducer
+     */
+    public static ILongTransducer take(final long n) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    long taken = 0;
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        R ret = result;
+                        if (taken < n) {
+                            ret = rf.apply(result, input, reduced);
+                            taken++;
+                        } else {
+                            reduced.set(true);
+                        }
+                        return ret;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * it processes inputs as long as the provided predicate returns true.
+     * If the predicate returns false, the reducing process stops.
+     * @param p a predicate used to test inputs
+     * @return a new transducer
+     */
+    public static ILongTransducer takeWhile(final LongPredicate p) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        R ret = result;
+                        if (p.test(input)) {
+                            ret = rf.apply(result, input, reduced);
+                        } else {
+                            reduced.set(true);
+                        }
+                        return ret;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * it skips n inputs, then processes the rest of the inputs.
+     * @param n the number of inputs to skip
+     * @return a new transducer
+     */
+    public static ILongTransducer drop(final long n) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    long dropped = 0;
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        R ret = result;
+                        if (dropped < n) {
+                            dropped++;
+                        } else {
+                            ret = rf.apply(result, input, reduced);
+                        }
+                        return ret;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * it skips inputs as long as the provided predicate returns true.
+     * Once the predicate returns false, the rest of the inputs are
+     * processed.
+     * @param p a predicate used to test inputs
+     * @return a new transducer
+     */
+    public static ILongTransducer dropWhile(final LongPredicate p) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    boolean drop = true;
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        if (drop && p.test(input)) {
+                            return result;
+                        }
+                        drop = false;
+                        return rf.apply(result, input, reduced);
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * it processes every nth input.
+     * @param n The frequence of inputs to process (e.g., 3 processes every third input).
+     * @return a new transducer
+     */
+    public static ILongTransducer takeNth(final long n) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    long nth = 0;
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        return ((nth++ % n) == 0) ? rf.apply(result, input, reduced) : result;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * consecutive equal input values are removed, only a single value
+     * is processed.
+     * @return a new transducer
+     */
+    public static ILongTransducer dedupe() {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    boolean started = false;
+                    long prior;
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        R ret = result;
+                        if (!started || prior != input) {
+                            started = true;
+                            prior = input;
+                            ret = rf.apply(result, input, reduced);
+                        }
+                        return ret;
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * only the first occurrence of each input is processed. Inputs seen are
+     * kept in a primitive open-addressing set.
+     * @return a new transducer
+     */
+    public static ILongTransducer distinct() {
+        return distinct(Distinct.exact());
+    }
+
+    /**
+     * Creates a transducer that transforms a reducing function such that
+     * only the first occurrence of each input is processed, remembering
+     * inputs as mode specifies. See Fns#distinct(Distinct).
+     * @param mode an exact or approximate mode
+     * @return a new transducer
+     */
+    public static ILongTransducer distinct(final Distinct mode) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return new ALongReducingFunctionOn<R>(rf) {
+                    final Distinct.Filter seen = mode.longs();
+                    @Override
+                    public R apply(R result, long input, Reduced reduced) {
+                        if (seen.add(input))
+                            return rf.apply(result, input, reduced);
+                        return result;
+                    }
+                };
+            }
+        };
+    }
+
+    // *** reducing functions
+
+    /**
+     * Creates a reducing function that gathers long inputs into long[] chunks of
+     * a given size and forwards each chunk to an object reducing function. Any
+     * remaining inputs are forwarded as a final, shorter chunk when the reducing
+     * process completes. Each chunk is handed off to rf, which owns it; it is
+     * never reused. The buffered inputs belong to one reduction at a time:
+     * they are dropped by the zero-arity apply and whenever a step arrives
+     * with a different Reduced than the last, so a reduction that was
+     * abandoned before completion does not leak into the next one.
+     * @param n the size of each chunk
+     * @param rf the reducing function that processes chunks
+     * @param <R> the result type of both reducing functions
+     * @return a new reducing function
+     * @throws IllegalArgumentException if n is less than 1
+     */
+    public static <R> ILongReducingFunction<R> partitionAll(final int n, final IReducingFunction<R, ? super long[]> rf) {
+        if (n < 1)
+            throw new IllegalArgumentException("partition size must be positive: " + n);
+        return new ILongReducingFunction<R>() {
+            long[] part = new long[n];
+            int size = 0;
+            Reduced owner;
+
+            @Override
+            public R apply() {
+                size = 0;
+                owner = null;
+                return rf.apply();
+            }
+
+            @Override
+            public R apply(R result) {
+                R ret = result;
+                owner = null;
+                if (size > 0) {
+                    long[] last = Arrays.copyOf(part, size);
+                    size = 0;
+                    ret = rf.apply(result, last, new Reduced());
+                }
+                return rf.apply(ret);
+            }
+
+            @Override
+            public R apply(R result, long input, Reduced reduced) {
+                if (reduced != owner) {
+                    owner = reduced;
+                    size = 0;
+                }
+                part[size++] = input;
+                if (size == n) {
+                    long[] full = part;
+                    part = new long[n];
+                    size = 0;
+                    return rf.apply(result, full, reduced);
+                }
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Creates a reducing function that accumulates count, sum, min and max of its
+     * inputs into a LongSummaryStatistics, without boxing.
+     * @return a new reducing function
+     */
+    public static ILongReducingFunction<LongSummaryStatistics> summarizing() {
+        return new ALongReducingFunction<LongSummaryStatistics>() {
+            @Override
+            public LongSummaryStatistics apply() {
+                return new LongSummaryStatistics();
+            }
+
+            @Override
+            public LongSummaryStatistics apply(LongSummaryStatistics result, long input, Reduced reduced) {
+                result.accept(input);
+                return result;
+            }
+        };
+    }
+
+    /**
+     * Returns the sum of the transduced input.
+     * @param xf a transducer (or composed transducers) to apply to input
+     * @param input the input to reduce
+     * @return the sum
+     */
+    public static long sum(ILongTransducer xf, long[] input) {
+        return transduce(xf, summarizing(), input).getSum();
+    }
+
+    /**
+     * Returns the smallest value of the transduced input, if any.
+     * @param xf a transducer (or composed transducers) to apply to input
+     * @param input the input to reduce
+     * @return the minimum, or an empty optional if nothing was reduced
+     */
+    public static OptionalLong min(ILongTransducer xf, long[] input) {
+        LongSummaryStatistics stats = transduce(xf, summarizing(), input);
+        return stats.getCount() == 0 ? OptionalLong.empty() : OptionalLong.of(stats.getMin());
+    }
+
+    /**
+     * Returns the largest value of the transduced input, if any.
+     * @param xf a transducer (or composed transducers) to apply to input
+     * @param input the input to reduce
+     * @return the maximum, or an empty optional if nothing was reduced
+     */
+    public static OptionalLong max(ILongTransducer xf, long[] input) {
+        LongSummaryStatistics stats = transduce(xf, summarizing(), input);
+        return stats.getCount() == 0 ? OptionalLong.empty() : OptionalLong.of(stats.getMax());
+    }
+
+    // *** bridges
+
+    /**
+     * Adapts a long reducing function to accept objects, converting each input
+     * with the given function. Initialization and completion are forwarded.
+     * @param f converts an input to a long
+     * @param rf the long reducing function to forward to
+     * @param <R> the result type of both reducing functions
+     * @param <B> the input type of the returned reducing function
+     * @return a new reducing function
+     */
+    public static <R, B> IReducingFunction<R, B> fromObj(final ToLongFunction<? super B> f, final ILongReducingFunction<R> rf) {
+        return new AReducingFunction<R, B>() {
+            @Override
+            public R apply() {
+                return rf.apply();
+            }
+
+            @Override
+            public R apply(R result) {
+                return rf.apply(result);
+            }
+
+            @Override
+            public R apply(R result, B input, Reduced reduced) {
+                return rf.apply(result, f.applyAsLong(input), reduced);
+            }
+        };
+    }
+
+    /**
+     * Adapts an object reducing function to accept long inputs, converting each
+     * input with the given function. Initialization and completion are forwarded.
+     * @param f converts a long to an input of rf
+     * @param rf the object reducing function to forward to
+     * @param <R> the result type of both reducing functions
+     * @param <A> the input type of rf
+     * @return a new reducing function
+     */
+    public static <R, A> ILongReducingFunction<R> toObj(final LongFunction<? extends A> f, final IReducingFunction<R, ? super A> rf) {
+        return new ILongReducingFunction<R>() {
+            @Override
+            public R apply() {
+                return rf.apply();
+            }
+
+            @Override
+            public R apply(R result) {
+                return rf.apply(result);
+            }
+
+            @Override
+            public R apply(R result, long input, Reduced reduced) {
+                return rf.apply(result, f.apply(input), reduced);
+            }
+        };
+    }
+
+    /**
+     * Wraps a long transducer as an object transducer over Long, so that it
+     * composes with the transducers in Fns. Inputs are unboxed on the way in and
+     * boxed on the way out; the stages inside xf run on long values.
+     * @param xf the long transducer to wrap
+     * @return a new transducer
+     */
+    public static ITransducer<Long, Long> boxed(final ILongTransducer xf) {
+        return new ITransducer<Long, Long>() {
+            @Override
+            public <R> IReducingFunction<R, Long> apply(IReducingFunction<R, ? super Long> rf) {
+                return fromObj(Long::longValue, xf.apply(toObj(Long::valueOf, rf)));
+            }
+        };
+    }
+
+    /**
+     * Wraps an object transducer over Long as a long transducer, so that it
+     * composes with the transducers in this class. Inputs are boxed on the way
+     * in and unboxed on the way out.
+     * @param xf the object transducer to wrap
+     * @return a new transducer
+     */
+    public static ILongTransducer unboxed(final ITransducer<Long, Long> xf) {
+        return new ILongTransducer() {
+            @Override
+            public <R> ILongReducingFunction<R> apply(ILongReducingFunction<R> rf) {
+                return toObj(Long::valueOf, xf.apply(fromObj(Long::longValue, rf)));
+            }
+        };
+    }
+}
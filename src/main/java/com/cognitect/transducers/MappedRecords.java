@@ -0,0 +1,209 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Transduces the delimited records of a file, e.g. the lines of a log file,
+ * straight from a memory mapping of it. No record is read into the heap:
+ * each one is handed to the reducing function as a view of the mapped bytes,
+ * one reusable view for the whole file, which is only valid for the duration
+ * of the step it is passed to. A stage that keeps a record, e.g. partitionAll
+ * or a collecting reducing function, must copy it first (see copy and
+ * CharSequence#toString). A reduced signal stops the scan.
+ *
+ * Files are mapped in regions of up to 2 GB, so files of any size can be
+ * read. The last record need not end with a delimiter; a record that spans
+ * two regions is read from a fresh mapping that starts at the record.
+ */
+public class MappedRecords {
+
+    private static final long REGION_SIZE = Integer.MAX_VALUE;
+
+    /**
+     * Reduces the records of a file using transformed reducing function. Each
+     * record is a ByteBuffer view whose position and limit bound the record,
+     * excluding the delimiter.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param path the file to read
+     * @param delimiter the byte that ends each record, e.g. '\n'
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @return result of reducing transformed records
+     * @throws IOException if the file cannot be mapped
+     */
+    public static <R, A> R transduce(ITransducer<A, ByteBuffer> xf, IReducingFunction<R, ? super A> rf,
+                                     Path path, byte delimiter) throws IOException {
+        IReducingFunction<R, ByteBuffer> f = xf.apply(rf);
+        return f.apply(scan(f, rf.apply(), path, delimiter, REGION_SIZE));
+    }
+
+    /**
+     * Reduces the records of a file using transformed reducing function. Each
+     * record is a CharSequence view of its bytes, excluding the delimiter, that
+     * decodes each byte as one ISO-8859-1 character. That is exact for ASCII
+     * text; records in a multi-byte encoding such as UTF-8 should be read with
+     * transduce and decoded by the stage that needs their characters.
+     * @param xf a transducer (or composed transducers) that transforms the reducing function
+     * @param rf a reducing function
+     * @param path the file to read
+     * @param delimiter the byte that ends each record, e.g. '\n'
+     * @param <R> return type
+     * @param <A> type of input expected by reducing function
+     * @return result of reducing transformed records
+     * @throws IOException if the file cannot be mapped
+     */
+    public static <R, A> R transduceText(ITransducer<A, CharSequence> xf, IReducingFunction<R, ? super A> rf,
+                                         Path path, byte delimiter) throws IOException {
+        return transduce(Fns.compose(text(), xf), rf, path, delimiter);
+    }
+
+    /**
+     * Copies the remaining bytes of a record view into a new heap buffer, for
+     * stages that keep records beyond the step they are passed to.
+     * @param record a record view
+     * @return a copy of the record
+     */
+    public static ByteBuffer copy(ByteBuffer record) {
+        ByteBuffer ret = ByteBuffer.allocate(record.remaining());
+        ret.put(record.duplicate());
+        ((Buffer) ret).flip();
+        return ret;
+    }
+
+    /**
+     * Steps f with each record of the file, without completing the result.
+     * Package-private so tests can use small regions.
+     */
+    static <R> R scan(IStepFunction<R, ? super ByteBuffer> f, R result, Path path,
+                      byte delimiter, long regionSize) throws IOException {
+        Reduced reduced = new Reduced();
+        R ret = result;
+        try (FileChannel ch = FileChannel.open(path, StandardOpenOption.READ)) {
+            long size = ch.size();
+            long pos = 0;
+            while (pos < size) {
+                int len = (int) Math.min(regionSize, size - pos);
+                MappedByteBuffer region = ch.map(FileChannel.MapMode.READ_ONLY, pos, len);
+                ByteBuffer view = region.duplicate();
+                // Buffer-typed, so calls link against the Java 8 Buffer methods
+                Buffer bounds = view;
+                int start = 0;
+                for (int i = 0; i < len; i++) {
+                    if (region.get(i) == delimiter) {
+                        bounds.limit(i).position(start);
+                        ret = f.apply(ret, view, reduced);
+                        if (reduced.get())
+                            return ret;
+                        bounds.clear();
+                        start = i + 1;
+                    }
+                }
+                if (pos + len == size) {
+                    if (start < len) {
+                        bounds.limit(len).position(start);
+                        ret = f.apply(ret, view, reduced);
+                    }
+                    break;
+                }
+                if (start == 0)
+                    throw new IOException("record at offset " + pos + " is longer than " + regionSize + " bytes");
+                pos += start;
+            }
+        }
+        return ret;
+    }
+
+    private static ITransducer<CharSequence, ByteBuffer> text() {
+        return new ITransducer<CharSequence, ByteBuffer>() {
+            @Override
+            public <R> IReducingFunction<R, ByteBuffer> apply(IReducingFunction<R, ? super CharSequence> rf) {
+                return new AReducingFunctionOn<R, CharSequence, ByteBuffer>(rf) {
+                    final Chars chars = new Chars();
+                    @Override
+                    public R apply(R result, ByteBuffer input, Reduced reduced) {
+                        chars.bytes = input;
+                        chars.offset = input.position();
+                        chars.length = input.remaining();
+                        return rf.apply(result, chars, reduced);
+                    }
+                };
+            }
+
+            @Override
+            public boolean isStateless() {
+                return true;
+            }
+        };
+    }
+
+    /**
+     * CharSequence view of a range of bytes, one ISO-8859-1 character per byte.
+     */
+    static final class Chars implements CharSequence {
+        ByteBuffer bytes;
+        int offset;
+        int length;
+
+        Chars() {
+        }
+
+        Chars(ByteBuffer bytes, int offset, int length) {
+            this.bytes = bytes;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length)
+                throw new IndexOutOfBoundsException(String.valueOf(index));
+            return (char) (bytes.get(offset + index) & 0xff);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            if (start < 0 || end > length || start > end)
+                throw new IndexOutOfBoundsException(start + ", " + end);
+            return new Chars(bytes, offset + start, end - start);
+        }
+
+        /**
+         * Copies the characters into a new String.
+         */
+        @Override
+        public String toString() {
+            byte[] b = new byte[length];
+            for (int i = 0; i < length; i++) {
+                b[i] = bytes.get(offset + i);
+            }
+            return new String(b, StandardCharsets.ISO_8859_1);
+        }
+    }
+}
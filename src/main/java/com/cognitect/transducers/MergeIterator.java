@@ -0,0 +1,125 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * Iterator over the k-way merge of sorted inputs, the implementation of
+ * Fns#merged. Keeps the next element of each input in a binary min-heap of
+ * input indices, so memory is O(k) and each element costs O(log k)
+ * comparisons. Equal elements come from inputs in list order. Inputs are
+ * only pulled when needed: the input an element came from is advanced when
+ * the following element is asked for, not before, so a consumer that stops
+ * after an element has pulled nothing beyond it from any input.
+ * @param <B> the type of elements
+ */
+final class MergeIterator<B> implements Iterator<B> {
+
+    private final Comparator<? super B> comparator;
+    private final List<? extends Iterable<? extends B>> inputs;
+    private Iterator<? extends B>[] iterators;
+    private Object[] heads;
+    private int[] heap;
+    private int size;
+    private boolean advance;
+
+    MergeIterator(Comparator<? super B> comparator, List<? extends Iterable<? extends B>> inputs) {
+        this.comparator = comparator;
+        this.inputs = inputs;
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    private void start() {
+        int k = inputs.size();
+        iterators = new Iterator[k];
+        heads = new Object[k];
+        heap = new int[k];
+        for (int i = 0; i < k; i++) {
+            iterators[i] = inputs.get(i).iterator();
+            if (iterators[i].hasNext()) {
+                heads[i] = iterators[i].next();
+                heap[size] = i;
+                up(size++);
+            }
+        }
+    }
+
+    @Override
+    public boolean hasNext() {
+        if (iterators == null) {
+            start();
+        } else if (advance) {
+            advance = false;
+            int i = heap[0];
+            if (iterators[i].hasNext()) {
+                heads[i] = iterators[i].next();
+            } else {
+                heads[i] = null;
+                heap[0] = heap[--size];
+            }
+            down(0);
+        }
+        return size > 0;
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public B next() {
+        if (!hasNext())
+            throw new NoSuchElementException();
+        advance = true;
+        return (B) heads[heap[0]];
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean less(int a, int b) {
+        int c = comparator.compare((B) heads[a], (B) heads[b]);
+        return c < 0 || c == 0 && a < b;
+    }
+
+    private void up(int i) {
+        int x = heap[i];
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!less(x, heap[parent]))
+                break;
+            heap[i] = heap[parent];
+            i = parent;
+        }
+        heap[i] = x;
+    }
+
+    private void down(int i) {
+        if (size == 0)
+            return;
+        int x = heap[i];
+        while (true) {
+            int child = 2 * i + 1;
+            if (child >= size)
+                break;
+            if (child + 1 < size && less(heap[child + 1], heap[child]))
+                child++;
+            if (!less(heap[child], x))
+                break;
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = x;
+    }
+}
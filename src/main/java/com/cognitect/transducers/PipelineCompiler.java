@@ -0,0 +1,342 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.invoke.MethodHandles;
+import java.lang.ref.SoftReference;
+import java.lang.reflect.Array;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Implementation of Fns#compile. A chain of reducing functions built by
+ * composed transducers is a linked list of AReducingFunctionOn objects, and
+ * the rf.apply call site in each stage class is shared by every pipeline
+ * that uses the stage, so across many pipelines it sees many downstream
+ * classes and the JIT cannot inline through it.
+ *
+ * For each distinct shape of chain, the sequence of stage classes and the
+ * class of the final reducing function, this defines a copy of every stage
+ * class from its unchanged class file, as a hidden class
+ * (Lookup#defineHiddenClass). A compiled chain is rebuilt from those copies,
+ * last stage first, by calling each copy's constructor with the arguments
+ * its stage was constructed with: its enclosing instance and captured
+ * variables, read back from the stage, and the copy of the next stage as its
+ * rf. Every call site in the chain then only ever sees the next stage of
+ * this one shape and can be inlined. The chain is compiled right after the
+ * transducer built it, before any input, so constructing the copies afresh
+ * leaves them in the state the stages were in.
+ *
+ * Only stage classes of this package, with no static fields, no fields
+ * typed by a stage class, no nested classes of their own and a constructor
+ * taking, in order, the enclosing instance if any, rf and the captured
+ * variables, as javac generates for anonymous classes, are copied. The
+ * stages before the first one that is not are compiled and linked to it
+ * and the rest of the chain, which are left as they are; if the first stage
+ * cannot be copied, the chain is left as it is. Without hidden classes
+ * (before Java 15), or once MAX_SHAPES shapes are held, chains are left as
+ * they are. Shapes are held softly, so the classes of shapes no longer in
+ * use can be unloaded.
+ */
+final class PipelineCompiler {
+
+    private static final int MAX_SHAPES = 256;
+
+    private static final String PACKAGE = PipelineCompiler.class.getPackage().getName();
+
+    private static final Logger LOG = Logger.getLogger(PipelineCompiler.class.getName());
+
+    /** Lookup#defineHiddenClass, or null before Java 15. */
+    private static final Method DEFINE_HIDDEN;
+    private static final Object NO_OPTIONS;
+
+    static {
+        Method define = null;
+        Object options = null;
+        try {
+            Class<?> option = Class.forName("java.lang.invoke.MethodHandles$Lookup$ClassOption");
+            options = Array.newInstance(option, 0);
+            define = MethodHandles.Lookup.class.getMethod("defineHiddenClass", byte[].class, boolean.class, options.getClass());
+        } catch (ClassNotFoundException | NoSuchMethodException e) {
+            define = null;
+        }
+        DEFINE_HIDDEN = define;
+        NO_OPTIONS = options;
+    }
+
+    private static final AtomicBoolean logged = new AtomicBoolean();
+
+    /** The class files of stage classes, or NONE for classes that cannot be copied. */
+    private static final ConcurrentMap<Class<?>, byte[]> templates = new ConcurrentHashMap<Class<?>, byte[]>();
+
+    private static final ConcurrentMap<List<Class<?>>, SoftReference<Shape>> shapes =
+            new ConcurrentHashMap<List<Class<?>>, SoftReference<Shape>>();
+
+    private static final byte[] NONE = new byte[0];
+
+    private static final Shape FAILED = new Shape(new Constructor<?>[0], new Field[0][], new Field[0][]);
+
+    private PipelineCompiler() {
+    }
+
+    static boolean isAvailable() {
+        return DEFINE_HIDDEN != null;
+    }
+
+    static <A, B> ITransducer<A, B> compile(final ITransducer<A, B> xf) {
+        if (!isAvailable()) {
+            fallback("hidden classes are not available before Java 15", null);
+            return xf;
+        }
+        return new ITransducer<A, B>() {
+            @Override
+            public <R> IReducingFunction<R, B> apply(IReducingFunction<R, ? super A> rf) {
+                return link(xf.apply(rf));
+            }
+
+            @Override
+            public boolean isStateless() {
+                return xf.isStateless();
+            }
+        };
+    }
+
+    /**
+     * Logs, the first time only, that pipelines are left uncompiled.
+     */
+    private static void fallback(String reason, Throwable cause) {
+        if (logged.compareAndSet(false, true))
+            LOG.log(Level.INFO, "Fns.compile leaves pipelines as they are: " + reason, cause);
+    }
+
+    /**
+     * Returns a copy of the chain of reducing functions starting at head built
+     * from the stage classes compiled for its shape, or head itself if no
+     * stage of it can be compiled.
+     */
+    @SuppressWarnings("unchecked")
+    static <R, B> IReducingFunction<R, B> link(IReducingFunction<R, B> head) {
+        List<AReducingFunctionOn<?, ?, ?>> chain = new ArrayList<AReducingFunctionOn<?, ?, ?>>();
+        List<Class<?>> key = new ArrayList<Class<?>>();
+        Object o = head;
+        while (o instanceof AReducingFunctionOn && template(o.getClass()) != null) {
+            AReducingFunctionOn<?, ?, ?> stage = (AReducingFunctionOn<?, ?, ?>) o;
+            chain.add(stage);
+            key.add(o.getClass());
+            o = stage.rf;
+        }
+        if (chain.isEmpty())
+            return head;
+        key.add(o == null ? null : o.getClass());
+        SoftReference<Shape> ref = shapes.get(key);
+        Shape shape = ref == null ? null : ref.get();
+        if (shape == null) {
+            if (shapes.size() >= MAX_SHAPES) {
+                shapes.values().removeIf(r -> r.get() == null);
+                if (shapes.size() >= MAX_SHAPES)
+                    return head;
+            }
+            shape = Shape.define(key.subList(0, key.size() - 1));
+            shapes.put(key, new SoftReference<Shape>(shape));
+        }
+        if (shape == FAILED)
+            return head;
+        try {
+            return (IReducingFunction<R, B>) shape.instantiate(chain, o);
+        } catch (ReflectiveOperationException e) {
+            fallback("cannot construct a copy of " + key, e);
+            shapes.put(key, new SoftReference<Shape>(FAILED));
+            return head;
+        }
+    }
+
+    /**
+     * Returns the class file of c, or null if c cannot be copied.
+     */
+    private static byte[] template(Class<?> c) {
+        byte[] bytes = templates.get(c);
+        if (bytes == null) {
+            bytes = load(c);
+            templates.putIfAbsent(c, bytes == null ? NONE : bytes);
+        }
+        return bytes == NONE ? null : bytes;
+    }
+
+    private static byte[] load(Class<?> c) {
+        String name = c.getName();
+        if (c.getClassLoader() != PipelineCompiler.class.getClassLoader() || c.isSynthetic()
+                || !name.startsWith(PACKAGE + ".") || name.indexOf('.', PACKAGE.length() + 1) >= 0)
+            return null;
+        for (Field f : c.getDeclaredFields()) {
+            // a field typed by a stage class could not hold the copy of its stage
+            if (Modifier.isStatic(f.getModifiers())
+                    || AReducingFunctionOn.class.isAssignableFrom(f.getType()) && f.getType() != AReducingFunctionOn.class)
+                return null;
+        }
+        if (Shape.arguments(c) == null)
+            return null;
+        try (InputStream in = c.getResourceAsStream(name.substring(PACKAGE.length() + 1) + ".class")) {
+            if (in == null)
+                return null;
+            ByteArrayOutputStream buf = new ByteArrayOutputStream();
+            byte[] b = new byte[8192];
+            for (int n; (n = in.read(b)) > 0; )
+                buf.write(b, 0, n);
+            byte[] bytes = buf.toByteArray();
+            // nested classes of c would still refer to c, not to its copy
+            return contains(bytes, (name.replace('.', '/') + "$").getBytes(StandardCharsets.UTF_8)) ? null : bytes;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private static boolean contains(byte[] bytes, byte[] part) {
+        outer:
+        for (int i = 0, n = bytes.length - part.length; i <= n; i++) {
+            for (int j = 0; j < part.length; j++) {
+                if (bytes[i + j] != part[j])
+                    continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * The constructors of the copied stage classes of one shape, with the
+     * fields of each original stage that hold the arguments, other than rf,
+     * its constructor was called with, and the same fields of its copy.
+     */
+    private static final class Shape {
+        final Constructor<?>[] constructors;
+        final Field[][] arguments;
+        final Field[][] copied;
+
+        Shape(Constructor<?>[] constructors, Field[][] arguments, Field[][] copied) {
+            this.constructors = constructors;
+            this.arguments = arguments;
+            this.copied = copied;
+        }
+
+        /**
+         * Returns the fields of c holding its enclosing instance and captured
+         * variables, in the order its constructor takes them around rf, or
+         * null if its only constructor does not take them that way.
+         */
+        static Field[] arguments(Class<?> c) {
+            Constructor<?>[] cs = c.getDeclaredConstructors();
+            if (cs.length != 1)
+                return null;
+            Class<?>[] params = cs[0].getParameterTypes();
+            Field outer = null;
+            List<Field> captured = new ArrayList<Field>();
+            for (Field f : c.getDeclaredFields()) {
+                if (f.getName().equals("this$0"))
+                    outer = f;
+                else if (f.getName().startsWith("val$"))
+                    captured.add(f);
+            }
+            int rf = outer == null ? 0 : 1;
+            if (params.length != rf + 1 + captured.size() || params[rf] != IReducingFunction.class
+                    || outer != null && params[0] != outer.getType())
+                return null;
+            List<Field> ret = new ArrayList<Field>();
+            if (outer != null)
+                ret.add(outer);
+            for (int i = 0; i < captured.size(); i++) {
+                if (params[rf + 1 + i] != captured.get(i).getType())
+                    return null;
+                ret.add(captured.get(i));
+            }
+            for (Field f : ret)
+                f.setAccessible(true);
+            return ret.toArray(new Field[0]);
+        }
+
+        static Shape define(List<Class<?>> stages) {
+            int n = stages.size();
+            Constructor<?>[] constructors = new Constructor<?>[n];
+            Field[][] arguments = new Field[n][];
+            Field[][] copied = new Field[n][];
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.lookup();
+                for (int i = 0; i < n; i++) {
+                    Class<?> c = stages.get(i);
+                    MethodHandles.Lookup hidden = (MethodHandles.Lookup) DEFINE_HIDDEN.invoke(lookup, template(c), false, NO_OPTIONS);
+                    Class<?> copy = hidden.lookupClass();
+                    constructors[i] = copy.getDeclaredConstructors()[0];
+                    constructors[i].setAccessible(true);
+                    arguments[i] = arguments(c);
+                    copied[i] = new Field[arguments[i].length];
+                    for (int j = 0; j < copied[i].length; j++) {
+                        copied[i][j] = copy.getDeclaredField(arguments[i][j].getName());
+                        copied[i][j].setAccessible(true);
+                    }
+                }
+            } catch (InvocationTargetException e) {
+                fallback("cannot define a copy of " + stages, e.getCause());
+                return FAILED;
+            } catch (IllegalAccessException | NoSuchFieldException | LinkageError e) {
+                fallback("cannot define a copy of " + stages, e);
+                return FAILED;
+            }
+            return new Shape(constructors, arguments, copied);
+        }
+
+        /**
+         * Returns the first of copies of the stages of chain, each constructed
+         * with the arguments of its stage and the copy of the next stage, the
+         * last one with tail, as rf. Throws InstantiationException if a copy
+         * did not keep its arguments where its stage did, which would mean its
+         * constructor takes them in another order than arguments assumed.
+         */
+        Object instantiate(List<AReducingFunctionOn<?, ?, ?>> chain, Object tail) throws ReflectiveOperationException {
+            Object next = tail;
+            for (int i = constructors.length - 1; i >= 0; i--) {
+                Object original = chain.get(i);
+                Field[] fields = arguments[i];
+                int rf = fields.length > 0 && fields[0].getName().equals("this$0") ? 1 : 0;
+                Object[] args = new Object[fields.length + 1];
+                for (int j = 0; j < fields.length; j++)
+                    args[j < rf ? j : j + 1] = fields[j].get(original);
+                args[rf] = next;
+                AReducingFunctionOn<?, ?, ?> copy = (AReducingFunctionOn<?, ?, ?>) constructors[i].newInstance(args);
+                if (copy.rf != next)
+                    throw new InstantiationException(copy.getClass() + " does not take rf where expected");
+                for (int j = 0; j < fields.length; j++) {
+                    Object expected = args[j < rf ? j : j + 1], actual = copied[i][j].get(copy);
+                    if (fields[j].getType().isPrimitive() ? !expected.equals(actual) : expected != actual)
+                        throw new InstantiationException(copy.getClass() + " does not keep " + fields[j].getName());
+                }
+                next = copy;
+            }
+            return next;
+        }
+    }
+}
@@ -0,0 +1,60 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * The early termination signal of a single reduction. A step function sets
+ * it to stop the reduction process after the current step. Unlike the
+ * AtomicBoolean taken by IStepFunction#apply(Object, Object, AtomicBoolean),
+ * reading and writing it are plain field accesses, with no memory barrier,
+ * so it must not be shared between threads. A reduction, including every
+ * stage of a composed transducer, runs on one thread and uses one instance.
+ */
+public final class Reduced {
+
+    private boolean reduced;
+    private AtomicBoolean atomic;
+
+    /**
+     * Returns true if the reduction process should stop.
+     * @return the current value
+     */
+    public boolean get() {
+        return reduced;
+    }
+
+    /**
+     * Sets whether the reduction process should stop.
+     * @param reduced true to stop the reduction process
+     */
+    public void set(boolean reduced) {
+        this.reduced = reduced;
+    }
+
+    /**
+     * Returns an AtomicBoolean to pass to step functions that only implement
+     * the AtomicBoolean signature. Created on first use and reused for the rest
+     * of the reduction, so callers copy the current value into it before each
+     * step, as the flag may have been reset since, and copy it back after.
+     * @return the AtomicBoolean view of this signal
+     */
+    AtomicBoolean atomic() {
+        if (atomic == null)
+            atomic = new AtomicBoolean(reduced);
+        return atomic;
+    }
+}
@@ -0,0 +1,35 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+
+package com.cognitect.transducers;
+
+/**
+ * Records a Flight Recorder event per reduction through an instrumented
+ * stage. The implementation, StageEvent.Recorder, is compiled separately
+ * from src/main/java-jfr, as jdk.jfr is not part of Java 8, and loaded
+ * reflectively by Instrumentation only on JVMs that have Flight Recorder.
+ */
+abstract class StageRecorder {
+
+    /**
+     * Returns a started event, or null if no recording has it enabled.
+     */
+    abstract Object start();
+
+    /**
+     * Ends event and commits it if its recording's thresholds allow.
+     */
+    abstract void commit(Object event, String stage, long in, long out, long nanos, boolean terminated);
+}
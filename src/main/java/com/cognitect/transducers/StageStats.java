@@ -0,0 +1,128 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Running totals for an instrumented stage, summed over every reducing
+ * function created for it by Fns#instrument, on any thread. Reducing
+ * functions count locally and add their counts here every few thousand
+ * inputs and on completion, so totals may lag slightly behind a reduction
+ * in progress.
+ */
+public final class StageStats {
+
+    private final String name;
+    final LongAdder in = new LongAdder();
+    final LongAdder out = new LongAdder();
+    final LongAdder terminations = new LongAdder();
+    final LongAdder completions = new LongAdder();
+    final LongAdder completionNanos = new LongAdder();
+    final LongAdder sampled = new LongAdder();
+    final LongAdder sampledNanos = new LongAdder();
+
+    StageStats(String name) {
+        this.name = name;
+    }
+
+    /**
+     * Returns the name of the stage.
+     * @return the name
+     */
+    public String name() {
+        return name;
+    }
+
+    /**
+     * Returns the number of inputs the stage received.
+     * @return the number of inputs
+     */
+    public long in() {
+        return in.sum();
+    }
+
+    /**
+     * Returns the number of values the stage passed downstream.
+     * @return the number of outputs
+     */
+    public long out() {
+        return out.sum();
+    }
+
+    /**
+     * Returns the fraction of inputs that produced no output, 1 - out / in,
+     * or 0 if there were no inputs. Negative for stages that expand inputs.
+     * @return the drop ratio
+     */
+    public double dropRatio() {
+        long in = in();
+        return in == 0 ? 0 : 1 - (double) out() / in;
+    }
+
+    /**
+     * Returns the number of reductions that were stopped early, by a reduced
+     * signal from the stage or from downstream, while passing through it.
+     * @return the number of early terminations
+     */
+    public long terminations() {
+        return terminations.sum();
+    }
+
+    /**
+     * Returns the number of reductions through the stage that completed.
+     * @return the number of completions
+     */
+    public long completions() {
+        return completions.sum();
+    }
+
+    /**
+     * Returns the total time the stage itself spent completing, not counting
+     * the completion of downstream stages.
+     * @return completion time in nanoseconds
+     */
+    public long completionNanos() {
+        return completionNanos.sum();
+    }
+
+    /**
+     * Returns the estimated time the stage itself spent processing inputs,
+     * not counting time spent downstream. Only sampled inputs are timed; the
+     * estimate is their mean time times the number of inputs.
+     * @return the estimated time in nanoseconds
+     */
+    public long nanos() {
+        long n = sampled.sum();
+        return n == 0 ? 0 : (long) ((double) sampledNanos.sum() / n * in());
+    }
+
+    void reset() {
+        in.reset();
+        out.reset();
+        terminations.reset();
+        completions.reset();
+        completionNanos.reset();
+        sampled.reset();
+        sampledNanos.reset();
+    }
+
+    @Override
+    public String toString() {
+        return name + "{in=" + in() + ", out=" + out() + ", terminations=" + terminations()
+                + ", completions=" + completions() + ", nanos=" + nanos()
+                + ", completionNanos=" + completionNanos() + "}";
+    }
+}
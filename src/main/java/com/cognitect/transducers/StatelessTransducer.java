@@ -0,0 +1,383 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A run of one or more stateless map, filter, remove and keep stages.
+ * ITransducer#comp fuses two runs by concatenating their stages; a
+ * Composite fuses the runs that meet across its parts when it is first
+ * applied. apply then builds one reducing function per pair of stages
+ * rather than one per stage: a map followed by a map calls the two
+ * functions back to back, a filter followed by a map is one conditional and
+ * a call, a keep followed by a filter one null check and a test. That halves
+ * the rf.apply hops through the pipeline while keeping each function's call
+ * site private to its pair, so the JIT can still inline it.
+ * @param <A> input type of input reducing function
+ * @param <B> input type of output reducing function
+ */
+final class StatelessTransducer<A, B> implements ITransducer<A, B> {
+
+    static final byte MAP = 0;
+    static final byte FILTER = 1;
+    static final byte KEEP = 2;
+
+    /** The kind of each stage: MAP, FILTER or KEEP. remove is a negated FILTER. */
+    final byte[] kinds;
+
+    /** The Function or Predicate of each stage. */
+    final Object[] fns;
+
+    private StatelessTransducer(byte[] kinds, Object[] fns) {
+        this.kinds = kinds;
+        this.fns = fns;
+    }
+
+    private StatelessTransducer(byte kind, Object fn) {
+        this(new byte[]{kind}, new Object[]{fn});
+    }
+
+    static <A, B> StatelessTransducer<A, B> map(Function<B, A> f) {
+        return new StatelessTransducer<A, B>(MAP, f);
+    }
+
+    static <A> StatelessTransducer<A, A> filter(Predicate<A> p) {
+        return new StatelessTransducer<A, A>(FILTER, p);
+    }
+
+    static <A> StatelessTransducer<A, A> keep(Function<A, A> f) {
+        return new StatelessTransducer<A, A>(KEEP, f);
+    }
+
+    /**
+     * Composes two transducers. Two runs are fused into one right away; any
+     * other pair becomes a Composite, in constant time however deeply left
+     * and right are nested, and is flattened once, when first applied.
+     */
+    static <A, B, C> ITransducer<A, C> comp(ITransducer<B, C> left, ITransducer<A, ? super B> right) {
+        if (left instanceof StatelessTransducer && right instanceof StatelessTransducer)
+            return ((StatelessTransducer<B, C>) left).then((StatelessTransducer<A, ? super B>) right);
+        return new Composite<A, B, C>(left, right);
+    }
+
+    /**
+     * Returns a single run equivalent to applying this run, then next.
+     */
+    <C> StatelessTransducer<C, B> then(StatelessTransducer<C, ? super A> next) {
+        int n = kinds.length;
+        byte[] k = Arrays.copyOf(kinds, n + next.kinds.length);
+        Object[] f = Arrays.copyOf(fns, n + next.fns.length);
+        System.arraycopy(next.kinds, 0, k, n, next.kinds.length);
+        System.arraycopy(next.fns, 0, f, n, next.fns.length);
+        return new StatelessTransducer<C, B>(k, f);
+    }
+
+    /**
+     * Adds the stages of xf to stages, in the order inputs flow through them,
+     * splitting composites and fused runs back into single stages.
+     */
+    static void stages(ITransducer<?, ?> xf, List<ITransducer<?, ?>> stages) {
+        List<ITransducer<?, ?>> parts = xf instanceof Composite
+                ? ((Composite<?, ?, ?>) xf).parts() : Collections.<ITransducer<?, ?>>singletonList(xf);
+        for (ITransducer<?, ?> part : parts) {
+            if (part instanceof StatelessTransducer) {
+                StatelessTransducer<?, ?> t = (StatelessTransducer<?, ?>) part;
+                for (int i = 0; i < t.kinds.length; i++)
+                    stages.add(new StatelessTransducer<Object, Object>(t.kinds[i], t.fns[i]));
+            } else {
+                stages.add(part);
+            }
+        }
+    }
+
+    /**
+     * Returns the kind of the first stage of this run: map, filter or keep.
+     */
+    String kind() {
+        return kinds[0] == MAP ? "map" : kinds[0] == FILTER ? "filter" : "keep";
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <R> IReducingFunction<R, B> apply(IReducingFunction<R, ? super A> rf) {
+        IReducingFunction<R, Object> down = (IReducingFunction<R, Object>) rf;
+        int i = kinds.length;
+        while (i > 0) {
+            if (i > 1) {
+                down = pair(kinds[i - 2], fns[i - 2], kinds[i - 1], fns[i - 1], down);
+                i -= 2;
+            } else {
+                down = single(kinds[i - 1], fns[i - 1], down);
+                i -= 1;
+            }
+        }
+        return (IReducingFunction<R, B>) down;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> IReducingFunction<R, Object> single(byte kind, Object fn, IReducingFunction<R, Object> rf) {
+        switch (kind) {
+            case MAP: {
+                final Function<Object, Object> f = (Function<Object, Object>) fn;
+                return new AReducingFunctionOn<R, Object, Object>(rf) {
+                    @Override
+                    public R apply(R result, Object input, Reduced reduced) {
+                        return rf.apply(result, f.apply(input), reduced);
+                    }
+                };
+            }
+            case FILTER: {
+                final Predicate<Object> p = (Predicate<Object>) fn;
+                return new AReducingFunctionOn<R, Object, Object>(rf) {
+                    @Override
+                    public R apply(R result, Object input, Reduced reduced) {
+                        if (p.test(input))
+                            return rf.apply(result, input, reduced);
+                        return result;
+                    }
+                };
+            }
+            default: {
+                final Function<Object, Object> f = (Function<Object, Object>) fn;
+                return new AReducingFunctionOn<R, Object, Object>(rf) {
+                    @Override
+                    public R apply(R result, Object input, Reduced reduced) {
+                        Object ret = f.apply(input);
+                        if (ret != null)
+                            return rf.apply(result, ret, reduced);
+                        return result;
+                    }
+                };
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <R> IReducingFunction<R, Object> pair(byte k1, Object fn1, byte k2, Object fn2, IReducingFunction<R, Object> rf) {
+        if (k1 == FILTER && k2 == FILTER) {
+            final Predicate<Object> p = (Predicate<Object>) fn1;
+            final Predicate<Object> q = (Predicate<Object>) fn2;
+            return new AReducingFunctionOn<R, Object, Object>(rf) {
+                @Override
+                public R apply(R result, Object input, Reduced reduced) {
+                    if (p.test(input) && q.test(input))
+                        return rf.apply(result, input, reduced);
+                    return result;
+                }
+            };
+        }
+        if (k1 == FILTER) {
+            final Predicate<Object> p = (Predicate<Object>) fn1;
+            final Function<Object, Object> f = (Function<Object, Object>) fn2;
+            if (k2 == MAP) {
+                return new AReducingFunctionOn<R, Object, Object>(rf) {
+                    @Override
+                    public R apply(R result, Object input, Reduced reduced) {
+                        if (p.test(input))
+                            return rf.apply(result, f.apply(input), reduced);
+                        return result;
+                    }
+                };
+            }
+            return new AReducingFunctionOn<R, Object, Object>(rf) {
+                @Override
+                public R apply(R result, Object input, Reduced reduced) {
+                    if (p.test(input)) {
+                        Object x = f.apply(input);
+                        if (x != null)
+                            return rf.apply(result, x, reduced);
+                    }
+                    return result;
+                }
+            };
+        }
+        final Function<Object, Object> f = (Function<Object, Object>) fn1;
+        if (k2 == FILTER) {
+            final Predicate<Object> p = (Predicate<Object>) fn2;
+            if (k1 == MAP) {
+                return new AReducingFunctionOn<R, Object, Object>(rf) {
+                    @Override
+                    public R apply(R result, Object input, Reduced reduced) {
+                        Object x = f.apply(input);
+                        if (p.test(x))
+                            return rf.apply(result, x, reduced);
+                        return result;
+                    }
+                };
+            }
+            return new AReducingFunctionOn<R, Object, Object>(rf) {
+                @Override
+                public R apply(R result, Object input, Reduced reduced) {
+                    Object x = f.apply(input);
+                    if (x != null && p.test(x))
+                        return rf.apply(result, x, reduced);
+                    return result;
+                }
+            };
+        }
+        final Function<Object, Object> g = (Function<Object, Object>) fn2;
+        if (k1 == MAP && k2 == MAP) {
+            return new AReducingFunctionOn<R, Object, Object>(rf) {
+                @Override
+                public R apply(R result, Object input, Reduced reduced) {
+                    return rf.apply(result, g.apply(f.apply(input)), reduced);
+                }
+            };
+        }
+        if (k1 == MAP) {
+            return new AReducingFunctionOn<R, Object, Object>(rf) {
+                @Override
+                public R apply(R result, Object input, Reduced reduced) {
+                    Object y = g.apply(f.apply(input));
+                    if (y != null)
+                        return rf.apply(result, y, reduced);
+                    return result;
+                }
+            };
+        }
+        if (k2 == MAP) {
+            return new AReducingFunctionOn<R, Object, Object>(rf) {
+                @Override
+                public R apply(R result, Object input, Reduced reduced) {
+                    Object x = f.apply(input);
+                    if (x != null)
+                        return rf.apply(result, g.apply(x), reduced);
+                    return result;
+                }
+            };
+        }
+        return new AReducingFunctionOn<R, Object, Object>(rf) {
+            @Override
+            public R apply(R result, Object input, Reduced reduced) {
+                Object x = f.apply(input);
+                if (x != null) {
+                    Object y = g.apply(x);
+                    if (y != null)
+                        return rf.apply(result, y, reduced);
+                }
+                return result;
+            }
+        };
+    }
+
+    @Override
+    public boolean isStateless() {
+        return true;
+    }
+
+    /**
+     * Two transducers composed with ITransducer#comp, left applied to the
+     * output of right, so that inputs flow through left first.
+     * @param <A> input type of input reducing function
+     * @param <B> the type flowing from left to right
+     * @param <C> input type of output reducing function
+     */
+    static final class Composite<A, B, C> implements ITransducer<A, C> {
+        final ITransducer<B, C> left;
+        final ITransducer<A, ? super B> right;
+
+        /** The flattened parts, computed on first use; see parts(). */
+        private volatile List<ITransducer<?, ?>> parts;
+
+        Composite(ITransducer<B, C> left, ITransducer<A, ? super B> right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Returns the transducers this composite is made of, in the order
+         * inputs flow through them, with nested composites flattened and
+         * adjacent runs fused. Walks the tree with an explicit stack, so any
+         * nesting depth takes time linear in the number of leaves.
+         */
+        List<ITransducer<?, ?>> parts() {
+            List<ITransducer<?, ?>> ret = parts;
+            if (ret != null)
+                return ret;
+            ret = new ArrayList<ITransducer<?, ?>>();
+            List<Byte> kinds = new ArrayList<Byte>();
+            List<Object> fns = new ArrayList<Object>();
+            Deque<ITransducer<?, ?>> todo = new ArrayDeque<ITransducer<?, ?>>();
+            todo.push(this);
+            while (!todo.isEmpty()) {
+                ITransducer<?, ?> xf = todo.pop();
+                if (xf instanceof Composite) {
+                    Composite<?, ?, ?> c = (Composite<?, ?, ?>) xf;
+                    List<ITransducer<?, ?>> done = c.parts;
+                    if (done != null) {
+                        for (int i = done.size() - 1; i >= 0; i--)
+                            todo.push(done.get(i));
+                    } else {
+                        todo.push(c.right);
+                        todo.push(c.left);
+                    }
+                } else if (xf instanceof StatelessTransducer) {
+                    StatelessTransducer<?, ?> t = (StatelessTransducer<?, ?>) xf;
+                    for (int i = 0; i < t.kinds.length; i++) {
+                        kinds.add(t.kinds[i]);
+                        fns.add(t.fns[i]);
+                    }
+                } else {
+                    run(kinds, fns, ret);
+                    ret.add(xf);
+                }
+            }
+            run(kinds, fns, ret);
+            return parts = Collections.unmodifiableList(ret);
+        }
+
+        /**
+         * Adds the run of the stages gathered in kinds and fns, if any, to
+         * parts, and clears them.
+         */
+        private static void run(List<Byte> kinds, List<Object> fns, List<ITransducer<?, ?>> parts) {
+            if (kinds.isEmpty())
+                return;
+            byte[] k = new byte[kinds.size()];
+            for (int i = 0; i < k.length; i++)
+                k[i] = kinds.get(i);
+            parts.add(new StatelessTransducer<Object, Object>(k, fns.toArray()));
+            kinds.clear();
+            fns.clear();
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <R> IReducingFunction<R, C> apply(IReducingFunction<R, ? super A> rf) {
+            List<ITransducer<?, ?>> parts = parts();
+            IReducingFunction<R, Object> down = (IReducingFunction<R, Object>) rf;
+            for (int i = parts.size() - 1; i >= 0; i--)
+                down = ((ITransducer<Object, Object>) parts.get(i)).apply(down);
+            return (IReducingFunction<R, C>) (IReducingFunction<R, ?>) down;
+        }
+
+        @Override
+        public boolean isStateless() {
+            for (ITransducer<?, ?> part : parts()) {
+                if (!part.isStateless())
+                    return false;
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.ToLongFunction;
+
+/**
+ * The n greatest inputs seen, by a comparator or by a long key, kept in a
+ * bounded binary min-heap whose root is the least of them, so an input that
+ * does not beat the root costs one comparison and memory is bounded by n
+ * however long the input; the heap grows by doubling until it holds n.
+ * With a long key, keys are computed once per input and kept in a parallel
+ * long[], and comparisons are on primitives. Used by Fns#topN, Fns#bottomN
+ * and the Fns#greatest and Fns#least reducing functions; partial results,
+ * e.g. of fold, can be combined with merge. An input only displaces a
+ * strictly lesser one, so among equal inputs the ones seen first are kept.
+ * @param <A> the type of inputs
+ */
+public final class TopN<A> {
+
+    private final int n;
+    private final Comparator<? super A> comparator;
+    private final ToLongFunction<? super A> key;
+    private final boolean negate;
+    private Object[] items;
+    private long[] keys;
+    private int size;
+
+    TopN(int n, Comparator<? super A> comparator) {
+        this(n, comparator, null, false);
+    }
+
+    /**
+     * Keeps the inputs with the n greatest keys, or the n least if negate.
+     */
+    TopN(int n, ToLongFunction<? super A> key, boolean negate) {
+        this(n, null, key, negate);
+    }
+
+    private TopN(int n, Comparator<? super A> comparator, ToLongFunction<? super A> key, boolean negate) {
+        if (n < 1)
+            throw new IllegalArgumentException("n must be positive: " + n);
+        this.n = n;
+        this.comparator = comparator;
+        this.key = key;
+        this.negate = negate;
+        int capacity = Math.min(n, 16);
+        this.items = new Object[capacity];
+        this.keys = key == null ? null : new long[capacity];
+    }
+
+    /**
+     * Returns a new, empty TopN with the same n and ordering.
+     */
+    TopN<A> empty() {
+        return new TopN<A>(n, comparator, key, negate);
+    }
+
+    /**
+     * Offers an input.
+     * @param a an input
+     * @return true if the input is now among the n greatest
+     */
+    public boolean add(A a) {
+        long k = 0;
+        if (key != null) {
+            k = key.applyAsLong(a);
+            if (negate)
+                k = ~k;
+        }
+        return add(a, k);
+    }
+
+    private boolean add(A a, long k) {
+        if (size < n) {
+            if (size == items.length) {
+                int capacity = (int) Math.min(n, 2L * size);
+                items = Arrays.copyOf(items, capacity);
+                if (keys != null)
+                    keys = Arrays.copyOf(keys, capacity);
+            }
+            items[size] = a;
+            if (keys != null)
+                keys[size] = k;
+            up(size++);
+            return true;
+        }
+        if (!greater(a, k, 0))
+            return false;
+        items[0] = a;
+        if (keys != null)
+            keys[0] = k;
+        down(0);
+        return true;
+    }
+
+    /**
+     * Adds the inputs of other to these, e.g. to combine the partial results
+     * of Fns#fold. other must have been created by the same factory.
+     * @param other inputs to add
+     * @return this
+     */
+    @SuppressWarnings("unchecked")
+    public TopN<A> merge(TopN<A> other) {
+        for (int i = 0; i < other.size; i++)
+            add((A) other.items[i], other.keys == null ? 0 : other.keys[i]);
+        return this;
+    }
+
+    /**
+     * Returns the number of inputs kept, at most n.
+     * @return the number of inputs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the inputs kept, greatest first.
+     * @return a new list of the inputs
+     */
+    @SuppressWarnings("unchecked")
+    public List<A> toList() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++)
+            order[i] = i;
+        Arrays.sort(order, (i, j) -> greater(i, j) ? -1 : greater(j, i) ? 1 : 0);
+        List<A> ret = new ArrayList<A>(size);
+        for (Integer i : order)
+            ret.add((A) items[i]);
+        return ret;
+    }
+
+    @Override
+    public String toString() {
+        return toList().toString();
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean greater(A a, long k, int j) {
+        if (keys != null)
+            return k > keys[j];
+        return comparator.compare(a, (A) items[j]) > 0;
+    }
+
+    @SuppressWarnings("unchecked")
+    private boolean greater(int i, int j) {
+        return greater((A) items[i], keys == null ? 0 : keys[i], j);
+    }
+
+    private void up(int i) {
+        while (i > 0) {
+            int parent = (i - 1) >>> 1;
+            if (!greater(parent, i))
+                return;
+            swap(i, parent);
+            i = parent;
+        }
+    }
+
+    private void down(int i) {
+        while (true) {
+            int least = i, l = 2 * i + 1, r = l + 1;
+            if (l < size && greater(least, l))
+                least = l;
+            if (r < size && greater(least, r))
+                least = r;
+            if (least == i)
+                return;
+            swap(i, least);
+            i = least;
+        }
+    }
+
+    private void swap(int i, int j) {
+        Object t = items[i];
+        items[i] = items[j];
+        items[j] = t;
+        if (keys != null) {
+            long k = keys[i];
+            keys[i] = keys[j];
+            keys[j] = k;
+        }
+    }
+}
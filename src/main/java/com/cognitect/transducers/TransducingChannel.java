@@ -0,0 +1,380 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded channel for handing values from producer threads to consumer
+ * threads, with a transducer applied on the way through, in the manner of a
+ * Clojure core.async channel. Producers put B values and consumers take the
+ * A values the transducer makes of them.
+ *
+ * The transducer runs on the put side. Its reducing function may be stateful,
+ * so steps are serialized without a lock: each put enqueues its value on a
+ * lock-free inbox and whichever producer finds the channel idle steps the
+ * transducer for every queued value, placing the results in a lock-free ring
+ * buffer that consumers take from concurrently. A step that expands its input
+ * may briefly hold more values than the channel's capacity; puts block (or
+ * fail, for offer) until consumers have brought it back under capacity.
+ *
+ * Closing the channel runs the completion arity of the reducing function once
+ * every accepted value has been stepped, so stateful stages such as
+ * partitionAll flush their remaining values for consumers to take. A reduced
+ * signal from the transducer closes the channel. After close, puts are
+ * refused, and takes return the remaining values and then null. Neither
+ * inputs nor transformed values may be null. An exception thrown by the
+ * transducer closes the channel without completing the reducing function,
+ * and is thrown from the put, take or close call that happened to run the
+ * step.
+ *
+ * Blocked threads wait with LockSupport.park, never in a synchronized block,
+ * so virtual threads blocked on a channel do not pin their carrier thread.
+ * @param <A> type of values taken from the channel
+ * @param <B> type of values put into the channel
+ */
+public class TransducingChannel<A, B> {
+
+    private final int capacity;
+    private final Ring ring;
+    private final TransducingSpliterator.Buffer<A> overflow = new TransducingSpliterator.Buffer<A>();
+    private final IReducingFunction<TransducingSpliterator.Buffer<A>, B> rf;
+    private final Reduced reduced = new Reduced();
+
+    private final Queue<B> inbox = new ConcurrentLinkedQueue<B>();
+    private final AtomicInteger wip = new AtomicInteger();
+    /** Values in inbox, overflow and ring; puts are admitted while below capacity. */
+    private final AtomicInteger count = new AtomicInteger();
+    /** Puts in progress, whose value may not be in inbox yet. */
+    private final AtomicInteger pending = new AtomicInteger();
+
+    private final Queue<Thread> putters = new ConcurrentLinkedQueue<Thread>();
+    private final Queue<Thread> takers = new ConcurrentLinkedQueue<Thread>();
+
+    private volatile boolean closed;
+    private volatile boolean overflowing;
+    private volatile boolean done;
+
+    // only accessed by the thread running drain
+    private boolean completed;
+
+    /**
+     * Creates a channel that holds up to capacity values and transforms the
+     * values put into it with xf.
+     * @param capacity the number of values the channel holds before puts block
+     * @param xf a transducer (or composed transducers) to apply
+     */
+    public TransducingChannel(int capacity, ITransducer<A, B> xf) {
+        if (capacity < 1)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.capacity = capacity;
+        this.ring = new Ring(capacity);
+        this.rf = xf.apply(overflow);
+    }
+
+    /**
+     * Puts a value into the channel, waiting for space if necessary.
+     * @param b the value to put
+     * @return true if the value was accepted, false if the channel is closed
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public boolean put(B b) throws InterruptedException {
+        if (b == null)
+            throw new NullPointerException();
+        for (;;) {
+            int r = admit(b);
+            if (r >= 0)
+                return r > 0;
+            Thread t = Thread.currentThread();
+            putters.offer(t);
+            r = admit(b);
+            if (r >= 0) {
+                putters.remove(t);
+                return r > 0;
+            }
+            LockSupport.park(this);
+            putters.remove(t);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Puts a value into the channel if there is space for it, without waiting.
+     * @param b the value to put
+     * @return true if the value was accepted, false if the channel is full or closed
+     */
+    public boolean offer(B b) {
+        if (b == null)
+            throw new NullPointerException();
+        return admit(b) > 0;
+    }
+
+    /**
+     * Takes a value from the channel, waiting for one if necessary.
+     * @return the next value, or null if the channel is closed and has no more values
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public A take() throws InterruptedException {
+        for (;;) {
+            A a = poll();
+            if (a != null || done && ring.isEmpty())
+                return a;
+            Thread t = Thread.currentThread();
+            takers.offer(t);
+            a = poll();
+            if (a != null || done && ring.isEmpty()) {
+                takers.remove(t);
+                return a;
+            }
+            LockSupport.park(this);
+            takers.remove(t);
+            if (Thread.interrupted())
+                throw new InterruptedException();
+        }
+    }
+
+    /**
+     * Takes a value from the channel if one is available, without waiting.
+     * @return the next value, or null if there is none
+     */
+    @SuppressWarnings("unchecked")
+    public A poll() {
+        A a = (A) ring.poll();
+        if (a == null)
+            return null;
+        count.decrementAndGet();
+        if (overflowing)
+            drain();
+        wake(putters);
+        if (!ring.isEmpty())
+            wake(takers);
+        return a;
+    }
+
+    /**
+     * Closes the channel. Values already accepted are still transformed and
+     * can be taken, followed by any values flushed by the completion of the
+     * reducing function. Subsequent puts are refused.
+     */
+    public void close() {
+        closed = true;
+        drain();
+        wakeAll(putters);
+    }
+
+    /**
+     * Returns true if the channel has been closed, explicitly or by a reduced
+     * transducer.
+     * @return true if closed
+     */
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * Tries to admit a put. A close that ran while this put was pending could
+     * not complete the reducing function, so once the put is no longer
+     * pending, accepted or not, drain runs again if the channel is closed.
+     * @return 1 if accepted, 0 if refused because closed, -1 if full
+     */
+    private int admit(B b) {
+        int r;
+        pending.incrementAndGet();
+        try {
+            r = enqueue(b);
+        } finally {
+            pending.decrementAndGet();
+        }
+        if (r > 0 || closed)
+            drain();
+        if (r > 0 && count.get() < capacity)
+            wake(putters);
+        return r;
+    }
+
+    private int enqueue(B b) {
+        if (closed)
+            return 0;
+        int c;
+        do {
+            c = count.get();
+            if (c >= capacity)
+                return -1;
+        } while (!count.compareAndSet(c, c + 1));
+        inbox.offer(b);
+        return 1;
+    }
+
+    /**
+     * Steps the reducing function with every value in inbox and moves the
+     * results into ring, as far as it has room, completing the reducing
+     * function once the channel is closed and all admitted values have been
+     * stepped. Runs on one thread at a time; calls made while it runs are
+     * picked up before it returns.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        do {
+            if (!done) {
+                try {
+                    drainLoop();
+                } catch (RuntimeException | Error e) {
+                    closed = true;
+                    done = true;
+                    inbox.clear();
+                    wip.set(0);
+                    wakeAll(takers);
+                    wakeAll(putters);
+                    throw e;
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainLoop() {
+        for (;;) {
+            while (!overflow.isEmpty()) {
+                A a = overflow.peek();
+                if (a == null)
+                    throw new NullPointerException("transducer produced a null value");
+                if (!ring.offer(a)) {
+                    overflowing = true;
+                    return;
+                }
+                overflow.poll();
+                wake(takers);
+            }
+            overflowing = false;
+            B b = inbox.poll();
+            if (b != null) {
+                if (reduced.get()) {
+                    count.decrementAndGet();
+                    continue;
+                }
+                int before = overflow.size();
+                rf.apply(overflow, b, reduced);
+                count.addAndGet(overflow.size() - before - 1);
+                if (reduced.get())
+                    closed = true;
+                wake(putters);
+                continue;
+            }
+            if (closed && pending.get() == 0 && inbox.isEmpty()) {
+                if (!completed) {
+                    completed = true;
+                    int before = overflow.size();
+                    rf.apply(overflow);
+                    count.addAndGet(overflow.size() - before);
+                    continue;
+                }
+                done = true;
+                wakeAll(takers);
+                wakeAll(putters);
+            }
+            return;
+        }
+    }
+
+    private static void wake(Queue<Thread> waiters) {
+        Thread t = waiters.poll();
+        if (t != null)
+            LockSupport.unpark(t);
+    }
+
+    private static void wakeAll(Queue<Thread> waiters) {
+        Thread t;
+        while ((t = waiters.poll()) != null) {
+            LockSupport.unpark(t);
+        }
+    }
+
+    /**
+     * Bounded lock-free multi-producer multi-consumer queue (Vyukov). Each
+     * slot carries a sequence number that tells producers and consumers
+     * whether it is free for the lap they are on, so a single CAS on the
+     * enqueue or dequeue position claims a slot.
+     */
+    private static final class Ring {
+        private final int capacity;
+        private final AtomicReferenceArray<Object> slots;
+        private final AtomicLongArray sequences;
+        private final AtomicLong enqueued = new AtomicLong();
+        private final AtomicLong dequeued = new AtomicLong();
+
+        Ring(int capacity) {
+            this.capacity = capacity;
+            this.slots = new AtomicReferenceArray<Object>(capacity);
+            this.sequences = new AtomicLongArray(capacity);
+            for (int i = 0; i < capacity; i++) {
+                sequences.set(i, i);
+            }
+        }
+
+        boolean offer(Object o) {
+            long pos = enqueued.get();
+            for (;;) {
+                int i = (int) (pos % capacity);
+                long dif = sequences.get(i) - pos;
+                if (dif == 0) {
+                    if (enqueued.compareAndSet(pos, pos + 1)) {
+                        slots.lazySet(i, o);
+                        sequences.set(i, pos + 1);
+                        return true;
+                    }
+                    pos = enqueued.get();
+                } else if (dif < 0) {
+                    return false;
+                } else {
+                    pos = enqueued.get();
+                }
+            }
+        }
+
+        Object poll() {
+            long pos = dequeued.get();
+            for (;;) {
+                int i = (int) (pos % capacity);
+                long dif = sequences.get(i) - (pos + 1);
+                if (dif == 0) {
+                    if (dequeued.compareAndSet(pos, pos + 1)) {
+                        Object o = slots.get(i);
+                        slots.lazySet(i, null);
+                        sequences.set(i, pos + capacity);
+                        return o;
+                    }
+                    pos = dequeued.get();
+                } else if (dif < 0) {
+                    return null;
+                } else {
+                    pos = dequeued.get();
+                }
+            }
+        }
+
+        boolean isEmpty() {
+            return dequeued.get() >= enqueued.get();
+        }
+    }
+}
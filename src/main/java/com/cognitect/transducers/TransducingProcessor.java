@@ -0,0 +1,269 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import org.reactivestreams.Processor;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * A Reactive Streams Processor that applies a transducer to the elements
+ * published to it. On Java 9 and later, org.reactivestreams.FlowAdapters
+ * converts it to and from java.util.concurrent.Flow.Processor. The
+ * reactive-streams library is an optional dependency, needed only by
+ * applications that use this class.
+ *
+ * Backpressure is demand driven. Upstream is asked for as many elements as
+ * downstream has requested but not yet received, less the transformed elements
+ * already buffered and the upstream elements already requested, so a stage
+ * that expands its input (cat, mapcat) stops upstream requests until its
+ * output has been consumed, and one that contracts it (filter, partitionAll)
+ * causes more to be requested. Buffered elements are bounded by downstream
+ * demand times the largest expansion of a single input.
+ *
+ * A reduced signal cancels the upstream subscription. Completion, from
+ * upstream or reduced, completes the transformed reducing function once,
+ * flushing stateful stages, and downstream is completed after the flushed
+ * elements have been delivered. An exception thrown by a stage cancels
+ * upstream and is signalled to downstream with onError, as is a null
+ * transformed element, which Reactive Streams does not permit.
+ *
+ * Supports a single subscriber. Signals are serialized with a
+ * work-in-progress counter, so the transducer runs on one thread at a time
+ * and no locks are held while calling upstream or downstream.
+ * @param <A> type of elements published downstream
+ * @param <B> type of elements received from upstream
+ */
+public class TransducingProcessor<A, B> implements Processor<B, A> {
+
+    private final TransducingSpliterator.Buffer<A> buffer = new TransducingSpliterator.Buffer<A>();
+    private final IReducingFunction<TransducingSpliterator.Buffer<A>, B> rf;
+    private final Reduced reduced = new Reduced();
+
+    private final Queue<B> inbox = new ConcurrentLinkedQueue<B>();
+    private final AtomicInteger wip = new AtomicInteger();
+    private final AtomicLong requested = new AtomicLong();
+    private final AtomicReference<Subscriber<? super A>> downstream = new AtomicReference<Subscriber<? super A>>();
+
+    private volatile boolean subscribed;
+    private volatile Subscription upstream;
+    private volatile boolean upstreamDone;
+    private volatile Throwable upstreamError;
+    private volatile Throwable requestError;
+    private volatile boolean cancelled;
+
+    // only accessed by the thread running drain
+    private long emitted;
+    private long outstanding;
+    private boolean completed;
+    private boolean terminated;
+
+    /**
+     * Creates a processor that transforms its input with xf.
+     * @param xf a transducer (or composed transducers) to apply
+     */
+    public TransducingProcessor(ITransducer<A, B> xf) {
+        this.rf = xf.apply(buffer);
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super A> subscriber) {
+        if (subscriber == null)
+            throw new NullPointerException("subscriber");
+        if (!downstream.compareAndSet(null, subscriber)) {
+            subscriber.onSubscribe(new Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("TransducingProcessor supports only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    requestError = new IllegalArgumentException("request must be positive: " + n);
+                    cancelled = true;
+                    cancelUpstream();
+                } else {
+                    long r, u;
+                    do {
+                        r = requested.get();
+                        u = r + n < 0 ? Long.MAX_VALUE : r + n;
+                    } while (!requested.compareAndSet(r, u));
+                }
+                drain();
+            }
+
+            @Override
+            public void cancel() {
+                cancelled = true;
+                cancelUpstream();
+                drain();
+            }
+        });
+        subscribed = true;
+        drain();
+    }
+
+    @Override
+    public void onSubscribe(Subscription subscription) {
+        if (subscription == null)
+            throw new NullPointerException("subscription");
+        if (upstream != null || upstreamDone) {
+            subscription.cancel();
+            return;
+        }
+        upstream = subscription;
+        if (cancelled)
+            subscription.cancel();
+        drain();
+    }
+
+    @Override
+    public void onNext(B b) {
+        if (b == null)
+            throw new NullPointerException("element");
+        inbox.offer(b);
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable t) {
+        if (t == null)
+            throw new NullPointerException("throwable");
+        upstreamError = t;
+        upstreamDone = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        upstreamDone = true;
+        drain();
+    }
+
+    private void cancelUpstream() {
+        Subscription s = upstream;
+        if (s != null)
+            s.cancel();
+    }
+
+    /**
+     * Delivers buffered elements, steps the reducing function with received
+     * elements and requests more from upstream, until no progress can be made.
+     * Runs on whichever thread signalled last, one thread at a time; signals
+     * that arrive while it runs are picked up before it returns.
+     */
+    private void drain() {
+        if (wip.getAndIncrement() != 0)
+            return;
+        int missed = 1;
+        do {
+            Subscriber<? super A> s = downstream.get();
+            if (subscribed && !terminated) {
+                try {
+                    drainLoop(s);
+                } catch (Throwable t) {
+                    terminate();
+                    cancelUpstream();
+                    s.onError(t);
+                }
+            }
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainLoop(Subscriber<? super A> s) {
+        for (;;) {
+            if (cancelled) {
+                terminate();
+                Throwable t = requestError;
+                if (t != null)
+                    s.onError(t);
+                return;
+            }
+            while (!buffer.isEmpty() && emitted < requested.get()) {
+                A a = buffer.poll();
+                if (a == null)
+                    throw new NullPointerException("transducer produced a null element");
+                emitted++;
+                s.onNext(a);
+                if (cancelled)
+                    break;
+            }
+            if (cancelled)
+                continue;
+            if (!buffer.isEmpty())
+                return;
+            if (completed) {
+                terminate();
+                s.onComplete();
+                return;
+            }
+            B b = inbox.poll();
+            if (b != null) {
+                outstanding--;
+                rf.apply(buffer, b, reduced);
+                if (reduced.get()) {
+                    cancelUpstream();
+                    complete();
+                }
+                continue;
+            }
+            if (upstreamDone) {
+                Throwable t = upstreamError;
+                if (t != null) {
+                    terminate();
+                    s.onError(t);
+                    return;
+                }
+                complete();
+                continue;
+            }
+            Subscription u = upstream;
+            long want = requested.get() - emitted - buffer.size() - outstanding;
+            if (u == null || want <= 0)
+                return;
+            outstanding += want;
+            u.request(want);
+        }
+    }
+
+    private void complete() {
+        completed = true;
+        inbox.clear();
+        rf.apply(buffer);
+    }
+
+    private void terminate() {
+        terminated = true;
+        inbox.clear();
+        while (!buffer.isEmpty()) {
+            buffer.poll();
+        }
+    }
+}
@@ -0,0 +1,174 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+
+/**
+ * A Spliterator, and Iterator, that applies a transducer to a source
+ * Spliterator on demand.
+ * Each tryAdvance pushes source elements, one at a time, through the
+ * transformed reducing function into a small buffer until the buffer holds
+ * something to hand out. So a step that expands one input into many (mapcat)
+ * buffers only that step's outputs, a reduced signal (take) stops pulling from
+ * the source, and completion runs exactly once, when the source is exhausted
+ * or reduced, flushing whatever a stateful stage (partitionAll) held back.
+ * @param <A> type of elements produced
+ * @param <B> type of source elements
+ */
+class TransducingSpliterator<A, B> implements Spliterator<A>, Iterator<A>, Consumer<B> {
+
+    private final Spliterator<B> source;
+    private final Buffer<A> buffer = new Buffer<A>();
+    private final IReducingFunction<Buffer<A>, B> rf;
+    private final Reduced reduced = new Reduced();
+    private boolean completed;
+
+    TransducingSpliterator(ITransducer<A, B> xf, Spliterator<B> source) {
+        this.source = source;
+        this.rf = xf.apply(buffer);
+    }
+
+    /**
+     * Steps the transformed reducing function with a source element. Only
+     * called by source.tryAdvance.
+     */
+    @Override
+    public void accept(B b) {
+        rf.apply(buffer, b, reduced);
+    }
+
+    /**
+     * Pulls source elements until the buffer is non-empty or there is nothing
+     * left to pull, completing the reduction in the latter case.
+     * @return true if the buffer holds an element
+     */
+    boolean fill() {
+        while (buffer.isEmpty()) {
+            if (completed)
+                return false;
+            if (reduced.get() || !source.tryAdvance(this)) {
+                completed = true;
+                rf.apply(buffer);
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean tryAdvance(Consumer<? super A> action) {
+        if (!fill())
+            return false;
+        action.accept(buffer.poll());
+        return true;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return fill();
+    }
+
+    @Override
+    public A next() {
+        if (!fill())
+            throw new NoSuchElementException();
+        return buffer.poll();
+    }
+
+    @Override
+    public void forEachRemaining(Consumer<? super A> action) {
+        while (fill()) {
+            while (!buffer.isEmpty()) {
+                action.accept(buffer.poll());
+            }
+        }
+    }
+
+    /**
+     * Returns null: the transformed reducing function may be stateful, so the
+     * source is always traversed sequentially, in order.
+     */
+    @Override
+    public Spliterator<A> trySplit() {
+        return null;
+    }
+
+    @Override
+    public long estimateSize() {
+        return Long.MAX_VALUE;
+    }
+
+    @Override
+    public int characteristics() {
+        return source.characteristics() & ORDERED;
+    }
+
+    /**
+     * FIFO queue of transformed elements that is also the reducing function
+     * they are pushed into. Unlike ArrayDeque, it accepts null elements.
+     */
+    static final class Buffer<A> extends AReducingFunction<Buffer<A>, A> {
+        private Object[] elements = new Object[8];
+        private int head;
+        private int tail;
+
+        boolean isEmpty() {
+            return head == tail;
+        }
+
+        int size() {
+            return tail - head;
+        }
+
+        @SuppressWarnings("unchecked")
+        A peek() {
+            return (A) elements[head];
+        }
+
+        @SuppressWarnings("unchecked")
+        A poll() {
+            A a = (A) elements[head];
+            elements[head] = null;
+            if (++head == tail)
+                head = tail = 0;
+            return a;
+        }
+
+        @Override
+        public Buffer<A> apply() {
+            return this;
+        }
+
+        @Override
+        public Buffer<A> apply(Buffer<A> result, A input, Reduced reduced) {
+            if (tail == elements.length) {
+                if (head > 0) {
+                    System.arraycopy(elements, head, elements, 0, tail - head);
+                    Arrays.fill(elements, tail - head, tail, null);
+                } else {
+                    elements = Arrays.copyOf(elements, elements.length * 2);
+                }
+                tail -= head;
+                head = 0;
+            }
+            elements[tail++] = input;
+            return result;
+        }
+    }
+}
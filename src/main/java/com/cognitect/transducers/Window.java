@@ -0,0 +1,68 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+
+/**
+ * The inputs of one window produced by Fns#sliding, Fns#tumbling or
+ * Fns#hopping: an unmodifiable view of the ring buffer the windowing
+ * transducer keeps its inputs in. One Window instance is reused for every
+ * window of a reduction, so it is only valid for the duration of the step it
+ * is passed to; copy it, e.g. with new ArrayList&lt;&gt;(window), to keep it.
+ * @param <A> the type of inputs in the window
+ */
+public final class Window<A> extends AbstractList<A> implements RandomAccess {
+
+    private final WindowBuffer<A> buffer;
+    long start;
+    long end;
+
+    Window(WindowBuffer<A> buffer) {
+        this.buffer = buffer;
+    }
+
+    /**
+     * Returns the inclusive lower bound of the window: a timestamp for time
+     * windows, the index of the first input of the window for sliding windows.
+     * @return the start of the window
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the window: a timestamp for time
+     * windows, an input index for sliding windows. A partial window flushed
+     * on completion keeps its nominal end.
+     * @return the end of the window
+     */
+    public long end() {
+        return end;
+    }
+
+    @Override
+    public A get(int index) {
+        if (index < 0 || index >= buffer.size())
+            throw new IndexOutOfBoundsException(String.valueOf(index));
+        return buffer.get(index);
+    }
+
+    @Override
+    public int size() {
+        return buffer.size();
+    }
+}
@@ -0,0 +1,159 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+/**
+ * FIFO ring buffer of the inputs of the current window, with their
+ * timestamps and, when aggregating, their values. Keeps the sum of the values
+ * and two monotonic deques of positions, one of decreasing values whose head
+ * is the maximum and one of increasing values whose head is the minimum, so
+ * push, evict, sum, min and max are all O(1) amortized. The arrays are sized
+ * to a power of two and doubled when full; sliding windows size them for the
+ * window up front and never grow.
+ * @param <A> the type of inputs
+ */
+final class WindowBuffer<A> {
+
+    private final boolean keepInputs;
+    private final boolean keepValues;
+
+    private Object[] inputs;
+    private long[] times;
+    private double[] values;
+    private long[] maxq;
+    private long[] minq;
+    private int mask;
+
+    // positions are counted from the first input ever pushed
+    private long head;
+    private long tail;
+    private long maxHead;
+    private long maxTail;
+    private long minHead;
+    private long minTail;
+    private double sum;
+
+    WindowBuffer(int capacity, boolean keepInputs, boolean keepValues) {
+        this.keepInputs = keepInputs;
+        this.keepValues = keepValues;
+        allocate(Integer.highestOneBit(Math.max(capacity, 2) - 1) << 1);
+    }
+
+    private void allocate(int length) {
+        if (keepInputs)
+            inputs = new Object[length];
+        times = new long[length];
+        if (keepValues) {
+            values = new double[length];
+            maxq = new long[length];
+            minq = new long[length];
+        }
+        mask = length - 1;
+    }
+
+    int size() {
+        return (int) (tail - head);
+    }
+
+    boolean isEmpty() {
+        return head == tail;
+    }
+
+    @SuppressWarnings("unchecked")
+    A get(int index) {
+        return (A) inputs[(int) (head + index) & mask];
+    }
+
+    long firstTime() {
+        return times[(int) head & mask];
+    }
+
+    double sum() {
+        return sum;
+    }
+
+    double max() {
+        return values[(int) maxq[(int) maxHead & mask] & mask];
+    }
+
+    double min() {
+        return values[(int) minq[(int) minHead & mask] & mask];
+    }
+
+    void push(A input, long time, double value) {
+        if (size() == mask + 1)
+            grow();
+        int i = (int) tail & mask;
+        if (keepInputs)
+            inputs[i] = input;
+        times[i] = time;
+        if (keepValues) {
+            values[i] = value;
+            sum += value;
+            while (maxTail > maxHead && values[(int) maxq[(int) (maxTail - 1) & mask] & mask] <= value)
+                maxTail--;
+            maxq[(int) maxTail++ & mask] = tail;
+            while (minTail > minHead && values[(int) minq[(int) (minTail - 1) & mask] & mask] >= value)
+                minTail--;
+            minq[(int) minTail++ & mask] = tail;
+        }
+        tail++;
+    }
+
+    void evict() {
+        int i = (int) head & mask;
+        if (keepInputs)
+            inputs[i] = null;
+        if (keepValues) {
+            sum -= values[i];
+            if (maxq[(int) maxHead & mask] == head)
+                maxHead++;
+            if (minq[(int) minHead & mask] == head)
+                minHead++;
+            if (head + 1 == tail)
+                sum = 0;
+        }
+        head++;
+    }
+
+    void evictBefore(long time) {
+        while (!isEmpty() && firstTime() < time)
+            evict();
+    }
+
+    private void grow() {
+        Object[] oldInputs = inputs;
+        long[] oldTimes = times;
+        double[] oldValues = values;
+        long[] oldMaxq = maxq;
+        long[] oldMinq = minq;
+        int oldMask = mask;
+        allocate((mask + 1) << 1);
+        for (long p = head; p < tail; p++) {
+            int from = (int) p & oldMask, to = (int) p & mask;
+            if (keepInputs)
+                inputs[to] = oldInputs[from];
+            times[to] = oldTimes[from];
+            if (keepValues)
+                values[to] = oldValues[from];
+        }
+        if (keepValues) {
+            for (long p = maxHead; p < maxTail; p++)
+                maxq[(int) p & mask] = oldMaxq[(int) p & oldMask];
+            for (long p = minHead; p < minTail; p++)
+                minq[(int) p & mask] = oldMinq[(int) p & oldMask];
+        }
+    }
+}
@@ -0,0 +1,102 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+/**
+ * Count, sum, minimum and maximum of the values of one window produced by
+ * Fns#slidingStats, Fns#tumblingStats or Fns#hoppingStats. The windowing
+ * transducer maintains them incrementally as inputs enter and leave the
+ * window, so each window costs O(1) however many inputs it spans.
+ */
+public final class WindowStats {
+
+    private final long start;
+    private final long end;
+    private final int count;
+    private final double sum;
+    private final double min;
+    private final double max;
+
+    WindowStats(long start, long end, int count, double sum, double min, double max) {
+        this.start = start;
+        this.end = end;
+        this.count = count;
+        this.sum = sum;
+        this.min = min;
+        this.max = max;
+    }
+
+    /**
+     * Returns the inclusive lower bound of the window (see Window#start).
+     * @return the start of the window
+     */
+    public long start() {
+        return start;
+    }
+
+    /**
+     * Returns the exclusive upper bound of the window (see Window#end).
+     * @return the end of the window
+     */
+    public long end() {
+        return end;
+    }
+
+    /**
+     * Returns the number of inputs in the window, always at least one.
+     * @return the count
+     */
+    public int count() {
+        return count;
+    }
+
+    /**
+     * Returns the sum of the values in the window.
+     * @return the sum
+     */
+    public double sum() {
+        return sum;
+    }
+
+    /**
+     * Returns the smallest value in the window.
+     * @return the minimum
+     */
+    public double min() {
+        return min;
+    }
+
+    /**
+     * Returns the largest value in the window.
+     * @return the maximum
+     */
+    public double max() {
+        return max;
+    }
+
+    /**
+     * Returns the arithmetic mean of the values in the window.
+     * @return the mean
+     */
+    public double mean() {
+        return sum / count;
+    }
+
+    @Override
+    public String toString() {
+        return "WindowStats{start=" + start + ", end=" + end + ", count=" + count +
+                ", sum=" + sum + ", min=" + min + ", max=" + max + "}";
+    }
+}
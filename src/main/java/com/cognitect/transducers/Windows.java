@@ -0,0 +1,163 @@
+// Copyright 2014 Cognitect. All Rights Reserved.
+//
+// Licensed under the Apache License, Version 2.0 (the "License");
+// you may not use this file except in compliance with the License.
+// You may obtain a copy of the License at
+//
+//      http://www.apache.org/licenses/LICENSE-2.0
+//
+// Unless required by applicable law or agreed to in writing, software
+// distributed under the License is distributed on an "AS-IS" BASIS,
+// WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+// See the License for the specific language governing permissions and
+// limitations under the License.
+
+package com.cognitect.transducers;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Implementation of the windowing transducers in Fns. Windows are the
+ * intervals [k * advance, k * advance + width) for integer k, over input
+ * timestamps, or over input indices (counting from 0) when there is no
+ * timestamp function, in which case only windows with k &gt;= 0 exist. The
+ * inputs of the open windows are kept in a WindowBuffer. Timestamps must not
+ * decrease; an input that falls before the oldest open window, whether late
+ * or in a gap between windows, is in no window and is dropped.
+ *
+ * A time window is emitted when an input at or past its end arrives. A count
+ * window is emitted as soon as its last input arrives. Windows that would be
+ * empty are skipped. On completion, the remaining windows that hold inputs
+ * are emitted, partial, in order.
+ */
+final class Windows {
+
+    private Windows() {
+    }
+
+    static <A> ITransducer<Window<A>, A> windows(final long width, final long advance,
+                                                 final ToLongFunction<? super A> time) {
+        check(width, advance);
+        return new ITransducer<Window<A>, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super Window<A>> rf) {
+                return new Windowing<R, Window<A>, A>(rf, width, advance, time, null) {
+                    final Window<A> window = new Window<A>(buffer);
+
+                    @Override
+                    Window<A> window(long start, long end) {
+                        window.start = start;
+                        window.end = end;
+                        return window;
+                    }
+                };
+            }
+        };
+    }
+
+    static <A> ITransducer<WindowStats, A> stats(final long width, final long advance,
+                                                 final ToLongFunction<? super A> time,
+                                                 final ToDoubleFunction<? super A> value) {
+        check(width, advance);
+        return new ITransducer<WindowStats, A>() {
+            @Override
+            public <R> IReducingFunction<R, A> apply(IReducingFunction<R, ? super WindowStats> rf) {
+                return new Windowing<R, WindowStats, A>(rf, width, advance, time, value) {
+                    @Override
+                    WindowStats window(long start, long end) {
+                        return new WindowStats(start, end, buffer.size(), buffer.sum(), buffer.min(), buffer.max());
+                    }
+                };
+            }
+        };
+    }
+
+    private static void check(long width, long advance) {
+        if (width < 1)
+            throw new IllegalArgumentException("window width must be positive: " + width);
+        if (advance < 1)
+            throw new IllegalArgumentException("window advance must be positive: " + advance);
+    }
+
+    private static abstract class Windowing<R, W, A> extends AReducingFunctionOn<R, W, A> {
+        final long width;
+        final long advance;
+        final ToLongFunction<? super A> time;
+        final ToDoubleFunction<? super A> value;
+        final WindowBuffer<A> buffer;
+        long index;
+        long start;
+        boolean started;
+
+        Windowing(IReducingFunction<R, ? super W> rf, long width, long advance,
+                  ToLongFunction<? super A> time, ToDoubleFunction<? super A> value) {
+            super(rf);
+            this.width = width;
+            this.advance = advance;
+            this.time = time;
+            this.value = value;
+            int capacity = time == null ? (int) Math.min(width, 1 << 16) : 16;
+            this.buffer = new WindowBuffer<A>(capacity, value == null, value != null);
+        }
+
+        /**
+         * Returns the window [start, end) over the contents of buffer.
+         */
+        abstract W window(long start, long end);
+
+        /**
+         * Returns the start of the oldest window that contains time t.
+         */
+        long first(long t) {
+            return (Math.floorDiv(t - width, advance) + 1) * advance;
+        }
+
+        @Override
+        public R apply(R result, A input, Reduced reduced) {
+            R ret = result;
+            long t;
+            if (time == null) {
+                t = index++;
+            } else {
+                t = time.applyAsLong(input);
+                if (!started) {
+                    start = first(t);
+                    started = true;
+                }
+                while (t >= start + width) {
+                    if (!buffer.isEmpty()) {
+                        ret = rf.apply(ret, window(start, start + width), reduced);
+                        if (reduced.get())
+                            return ret;
+                    }
+                    start += advance;
+                    buffer.evictBefore(start);
+                    if (buffer.isEmpty())
+                        start = Math.max(start, first(t));
+                }
+            }
+            if (t < start)
+                return ret;
+            buffer.push(input, t, value == null ? 0 : value.applyAsDouble(input));
+            if (time == null && t + 1 == start + width) {
+                ret = rf.apply(ret, window(start, start + width), reduced);
+                start += advance;
+                buffer.evictBefore(start);
+            }
+            return ret;
+        }
+
+        @Override
+        public R apply(R result) {
+            R ret = result;
+            Reduced reduced = new Reduced();
+            while (!buffer.isEmpty() && !reduced.get()) {
+                ret = rf.apply(ret, window(start, start + width), reduced);
+                start += advance;
+                buffer.evictBefore(start);
+            }
+            return rf.apply(ret);
+        }
+    }
+}
@@ -0,0 +1,234 @@
+package com.cognitect.transducers;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+import java.lang.management.ManagementFactory;
+import java.util.*;
+import java.util.function.Function;
+
+import static com.cognitect.transducers.Fns.*;
+
+/**
+ * Steady-state allocation budgets, in bytes per input element, measured with
+ * com.sun.management.ThreadMXBean#getThreadAllocatedBytes after warm-up.
+ * Inputs are boxed up front and the reducing function counts into a single
+ * long[], so what is measured is what the transducers and Impl allocate.
+ * Setting up each reduction (the chain of reducing functions, an iterator,
+ * the Reduced flag) costs a few hundred bytes, well under NONE per element
+ * at these input sizes, so NONE means no allocation per element.
+ */
+public class AllocationTest {
+
+    private static final double NONE = 0.01;
+
+    private static final int N = 100000;
+    private static final int WARMUP = 30;
+    private static final int ROUNDS = 10;
+
+    private static com.sun.management.ThreadMXBean threads;
+
+    private static final List<Integer> input = new ArrayList<Integer>(N);
+    private static final Integer[] array;
+    private static final int[] intArray = new int[N];
+    private static final long[] longArray = new long[N];
+    private static final long[] repeatedLongs = new long[N];
+    private static final double[] doubleArray = new double[N];
+    private static final List<Integer> repeated = new ArrayList<Integer>(N);
+    private static final List<List<Integer>> nested = new ArrayList<List<Integer>>();
+
+    static {
+        for (int i = 0; i < N; i++) {
+            input.add(i);
+            repeated.add(input.get(i % 1000));
+            intArray[i] = i;
+            longArray[i] = i;
+            repeatedLongs[i] = i % 1000;
+            doubleArray[i] = i;
+        }
+        array = input.toArray(new Integer[0]);
+        for (int i = 0; i < N; i += 10)
+            nested.add(new ArrayList<Integer>(input.subList(i, i + 10)));
+    }
+
+    private static final IReducingFunction<long[], Object> count = new AReducingFunction<long[], Object>() {
+        @Override
+        public long[] apply() {
+            return new long[1];
+        }
+
+        @Override
+        public long[] apply(long[] result, Object input, Reduced reduced) {
+            result[0]++;
+            return result;
+        }
+    };
+
+    private static final IReducingFunction<long[], Chunk<Integer>> release = new AReducingFunction<long[], Chunk<Integer>>() {
+        @Override
+        public long[] apply() {
+            return new long[1];
+        }
+
+        @Override
+        public long[] apply(long[] result, Chunk<Integer> input, Reduced reduced) {
+            result[0] += input.size();
+            input.release();
+            return result;
+        }
+    };
+
+    @BeforeClass
+    public static void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threads = (com.sun.management.ThreadMXBean) bean;
+        assumeTrue(threads.isThreadAllocatedMemorySupported());
+        threads.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    private static double bytesPerElement(Runnable reduction, int elements) {
+        for (int i = 0; i < WARMUP; i++)
+            reduction.run();
+        long id = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(id);
+        for (int i = 0; i < ROUNDS; i++)
+            reduction.run();
+        long after = threads.getThreadAllocatedBytes(id);
+        return (after - before) / ((double) ROUNDS * elements);
+    }
+
+    private static void assertBudget(String name, double budget, Runnable reduction, int elements) {
+        double bytes = bytesPerElement(reduction, elements);
+        assertTrue(name + " allocates " + bytes + " bytes per element, budget " + budget, bytes <= budget);
+    }
+
+    private static <A> void assertBudget(String name, double budget, ITransducer<A, Integer> xf) {
+        assertBudget(name, budget, xf, input);
+    }
+
+    private static <A, B> void assertBudget(String name, double budget, ITransducer<A, B> xf, List<B> in) {
+        assertBudget(name, budget, () -> transduce(xf, count, in), in.size());
+    }
+
+    @Test
+    public void testStateless() throws Exception {
+        Map<Integer, Integer> smap = new HashMap<Integer, Integer>();
+        smap.put(3, 4);
+
+        assertBudget("map", NONE, map((Integer i) -> i));
+        assertBudget("filter", NONE, filter((Integer i) -> (i & 1) == 0));
+        assertBudget("remove", NONE, remove((Integer i) -> (i & 1) == 0));
+        assertBudget("keep", NONE, keep((Integer i) -> (i & 1) == 0 ? i : null));
+        assertBudget("replace", NONE, replace(smap));
+        assertBudget("map.filter.keep", NONE,
+                map((Integer i) -> i).comp(filter((Integer i) -> (i & 1) == 0)).comp(keep((Integer i) -> i)));
+        assertBudget("compile", NONE,
+                compile(map((Integer i) -> i).comp(filter((Integer i) -> (i & 1) == 0)).comp(take(N))));
+    }
+
+    @Test
+    public void testStateful() throws Exception {
+        assertBudget("take", NONE, Fns.<Integer>take(N));
+        assertBudget("takeWhile", NONE, takeWhile((Integer i) -> i >= 0));
+        assertBudget("drop", NONE, Fns.<Integer>drop(10));
+        assertBudget("dropWhile", NONE, dropWhile((Integer i) -> i < 10));
+        assertBudget("takeNth", NONE, Fns.<Integer>takeNth(3));
+        assertBudget("dedupe", NONE, Fns.<Integer>dedupe());
+        // the set of 1000 keys, grown once per reduction
+        assertBudget("distinct", 0.5, Fns.<Integer>distinct(), repeated);
+        // its bit array, once per reduction
+        assertBudget("distinct approximate", 0.05, Fns.<Integer>distinct(Distinct.approximate(1000, 0.01)), repeated);
+        assertBudget("randomSample", NONE, Fns.<Integer>randomSample(0.1));
+        assertBudget("randomSample seeded", NONE, Fns.<Integer>randomSample(0.1, 42));
+        assertBudget("reservoirSample", NONE, Fns.<Integer>reservoirSample(100));
+        assertBudget("topN", NONE, topN(10, Comparator.<Integer>naturalOrder()));
+        assertBudget("bottomN", NONE, bottomN(10, (Integer i) -> (long) i));
+        assertBudget("mapCached", NONE, mapCached((Integer i) -> i, 2000), repeated);
+        assertBudget("keepCached", NONE, keepCached((Integer i) -> i, 2000), repeated);
+        // the index is passed to f as a Long, boxed for every input past 127
+        assertBudget("keepIndexed", 24, keepIndexed((Long n, Integer i) -> i));
+    }
+
+    @Test
+    public void testBuffering() throws Exception {
+        // a new list per partition: a header and n references
+        assertBudget("partitionAll", 6, Fns.<Integer>partitionAll(32));
+        assertBudget("partitionBy", 6, partitionBy((Integer i) -> input.get(i / 32)));
+        assertBudget("sliding", NONE, Fns.<Integer>sliding(32, 32));
+        assertBudget("tumbling", NONE, tumbling(32, (Integer i) -> i));
+        // its buffer of overlapping windows, grown once per reduction
+        assertBudget("hopping", 0.05, hopping(64, 32, (Integer i) -> i));
+        // a WindowStats per window
+        assertBudget("slidingStats", 3, slidingStats(32, 32, (Integer i) -> i));
+        assertBudget("tumblingStats", 3, tumblingStats(32, (Integer i) -> i, (Integer i) -> i));
+        assertBudget("hoppingStats", 6, hoppingStats(64, 32, (Integer i) -> i, (Integer i) -> i));
+        assertBudget("chunked", 6, Fns.<Integer>chunked(32));
+        assertBudget("chunked pooled", NONE, () -> transduce(Fns.<Integer>chunked(32, 4), release, input), N);
+    }
+
+    @Test
+    public void testExpanding() throws Exception {
+        // nested ArrayLists are stepped by index, without an iterator
+        assertBudget("cat", NONE, Fns.<Integer, List<Integer>>cat(), nested);
+        assertBudget("mapcat", NONE, mapcat((List<Integer> l) -> l), nested);
+        assertBudget("multiplex", NONE,
+                multiplex(map((Integer i) -> i), filter((Integer i) -> (i & 1) == 0)));
+    }
+
+    @Test
+    public void testSources() throws Exception {
+        ITransducer<Integer, Integer> xf = map((Integer i) -> i).comp(filter((Integer i) -> (i & 1) == 0));
+        assertBudget("array", NONE, () -> transduce(xf, count, array), N);
+        assertBudget("spliterator", NONE, () -> transduce(xf, count, input.spliterator()), N);
+        assertBudget("sequence", NONE, () -> {
+            for (Iterator<Integer> i = sequence(xf, input); i.hasNext(); )
+                i.next();
+        }, N);
+        assertBudget("merged", NONE, () -> transduceMerged(xf, count, Comparator.<Integer>naturalOrder(),
+                Arrays.asList(input.subList(0, N / 2), input.subList(N / 2, N))), N);
+        Function<Integer, Integer> identity = i -> i;
+        assertBudget("instrument", NONE, () -> transduce(instrument("allocation", map(identity)), count, input), N);
+    }
+
+    @Test
+    public void testPrimitives() throws Exception {
+        IIntStepFunction<long[]> intCount = (result, i, reduced) -> {
+            result[0]++;
+            return result;
+        };
+        IIntTransducer ints = IntFns.map(i -> i + 1).comp(IntFns.filter(i -> (i & 1) == 0)).comp(IntFns.remove(i -> i == 4))
+                .comp(IntFns.takeWhile(i -> i >= 0)).comp(IntFns.drop(10)).comp(IntFns.dropWhile(i -> i < 20))
+                .comp(IntFns.takeNth(2)).comp(IntFns.dedupe()).comp(IntFns.take(N));
+        assertBudget("IntFns", NONE, () -> IntFns.transduce(ints, intCount, new long[1], intArray), N);
+        // an int[] per partition
+        assertBudget("IntFns.partitionAll", 6,
+                () -> IntFns.transduce(IntFns.map(i -> i), IntFns.partitionAll(32, count), intArray), N);
+
+        ILongStepFunction<long[]> longCount = (result, l, reduced) -> {
+            result[0]++;
+            return result;
+        };
+        ILongTransducer longs = LongFns.map(l -> l + 1).comp(LongFns.filter(l -> (l & 1) == 0)).comp(LongFns.remove(l -> l == 4))
+                .comp(LongFns.takeWhile(l -> l >= 0)).comp(LongFns.drop(10)).comp(LongFns.dropWhile(l -> l < 20))
+                .comp(LongFns.takeNth(2)).comp(LongFns.dedupe()).comp(LongFns.take(N));
+        assertBudget("LongFns", NONE, () -> LongFns.transduce(longs, longCount, new long[1], longArray), N);
+        // the set of 1000 keys, grown once per reduction
+        assertBudget("LongFns.distinct", 0.5, () -> LongFns.transduce(LongFns.distinct(), longCount, new long[1], repeatedLongs), N);
+        assertBudget("LongFns.partitionAll", 10,
+                () -> LongFns.transduce(LongFns.map(l -> l), LongFns.partitionAll(32, count), longArray), N);
+
+        IDoubleStepFunction<long[]> doubleCount = (result, d, reduced) -> {
+            result[0]++;
+            return result;
+        };
+        IDoubleTransducer doubles = DoubleFns.map(d -> d + 1).comp(DoubleFns.filter(d -> d > 2)).comp(DoubleFns.remove(d -> d == 4))
+                .comp(DoubleFns.takeWhile(d -> d >= 0)).comp(DoubleFns.drop(10)).comp(DoubleFns.dropWhile(d -> d < 20))
+                .comp(DoubleFns.takeNth(2)).comp(DoubleFns.dedupe()).comp(DoubleFns.take(N));
+        assertBudget("DoubleFns", NONE, () -> DoubleFns.transduce(doubles, doubleCount, new long[1], doubleArray), N);
+        assertBudget("DoubleFns.partitionAll", 10,
+                () -> DoubleFns.transduce(DoubleFns.map(d -> d), DoubleFns.partitionAll(32, count), doubleArray), N);
+    }
+}
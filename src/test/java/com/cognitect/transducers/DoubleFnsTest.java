@@ -0,0 +1,81 @@
+package com.cognitect.transducers;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.*;
+
+import static com.cognitect.transducers.DoubleFns.*;
+
+public class DoubleFnsTest {
+
+    @Test
+    public void testPipeline() throws Exception {
+        IDoubleTransducer xf = filter(d -> !Double.isNaN(d)).comp(dedupe()).comp(map(d -> d * 2));
+
+        List<Double> vals = transduce(xf, (result, input, reduced) -> {
+            result.add(input);
+            return result;
+        }, new ArrayList<Double>(), new double[]{0.5, 0.5, Double.NaN, 1.5, 1.5, 0.5});
+
+        assertEquals(Arrays.asList(1.0, 3.0, 1.0), vals);
+
+        List<Double> nans = transduce(dedupe(), (result, input, reduced) -> {
+            result.add(input);
+            return result;
+        }, new ArrayList<Double>(), new double[]{Double.NaN, Double.NaN, 1.0, Double.NaN, 0.0, -0.0});
+
+        assertEquals(Arrays.asList(Double.NaN, 1.0, Double.NaN, 0.0, -0.0), nans);
+    }
+
+    private static IReducingFunction<List<double[]>, double[]> chunks() {
+        return new AReducingFunction<List<double[]>, double[]>() {
+            @Override
+            public List<double[]> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<double[]> apply(List<double[]> result, double[] input, Reduced reduced) {
+                result.add(input);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testPartitionAllPerReduction() throws Exception {
+        IDoubleReducingFunction<List<double[]>> rf = partitionAll(3, chunks());
+
+        // a reduction abandoned without completion leaves nothing behind
+        rf.apply(new ArrayList<>(), 100.0, new Reduced());
+        List<double[]> parts = Impl.reduce(rf, new ArrayList<>(), new double[]{0, 1, 2, 3});
+
+        assertEquals(2, parts.size());
+        assertArrayEquals(new double[]{0, 1, 2}, parts.get(0), 0.0);
+        assertArrayEquals(new double[]{3}, parts.get(1), 0.0);
+
+        // neither does one restarted with the zero-arity apply
+        Reduced reduced = new Reduced();
+        rf.apply(new ArrayList<>(), 100.0, reduced);
+        parts = rf.apply(rf.apply(rf.apply(), 7.0, reduced));
+
+        assertEquals(1, parts.size());
+        assertArrayEquals(new double[]{7}, parts.get(0), 0.0);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionAllRejectsEmptyPartitions() throws Exception {
+        partitionAll(0, chunks());
+    }
+
+    @Test
+    public void testReducers() throws Exception {
+        double[] seed = {3.5, -1.25, 2.0};
+
+        assertEquals(4.25, sum(drop(0), seed), 0.0);
+        assertEquals(OptionalDouble.of(-1.25), min(drop(0), seed));
+        assertEquals(OptionalDouble.of(3.5), max(drop(0), seed));
+        assertEquals(OptionalDouble.empty(), min(take(0), seed));
+    }
+}
@@ -4,7 +4,16 @@ import org.junit.Test;
 import static org.junit.Assert.*;
 
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BinaryOperator;
 import java.util.function.Function;
+import java.util.function.ToLongFunction;
+import java.util.stream.Collector;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import static com.cognitect.transducers.Fns.*;
 
@@ -374,4 +383,1084 @@ public class FnsTest {
 
         assertEquals(14, res.size());
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testIsStateless() throws Exception {
+        ITransducer<String, Integer> stateless = filter((Integer i) -> i > 0).comp(map(i -> i.toString()));
+
+        assertTrue(stateless.isStateless());
+        assertTrue(Fns.<Integer, Iterable<Integer>>cat().isStateless());
+        assertFalse(stateless.comp(take(3)).isStateless());
+        assertFalse(Fns.<Integer>dedupe().isStateless());
+        assertFalse(Fns.<Integer>partitionAll(2).isStateless());
+    }
+
+    @Test
+    public void testFold() throws Exception {
+        IReducingFunction<Long, Integer> sum = new AReducingFunction<Long, Integer>() {
+            @Override
+            public Long apply() {
+                return 0L;
+            }
+
+            @Override
+            public Long apply(Long result, Integer input, Reduced reduced) {
+                return result + input;
+            }
+        };
+
+        ITransducer<Integer, Integer> xf = filter((Integer i) -> i % 2 != 0).comp(map(i -> i * 2));
+
+        List<Integer> input = ints(100000);
+        long expected = transduce(xf, sum, input);
+
+        assertEquals(expected, (long) fold(100, xf, sum, Long::sum, input));
+        assertEquals(expected, (long) fold(xf, sum, Long::sum, input.toArray(new Integer[0])));
+        assertEquals(expected, (long) fold(xf, sum, Long::sum, input.spliterator()));
+
+        // chunk results are combined in input order
+        List<String> strings = fold(7, stringify, new AReducingFunction<List<String>, String>() {
+            @Override
+            public List<String> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<String> apply(List<String> result, String input, Reduced reduced) {
+                result.add(input);
+                return result;
+            }
+        }, (l, r) -> {
+            l.addAll(r);
+            return l;
+        }, longs(1000));
+
+        assertEquals(transduce(stringify, addString, new ArrayList<>(), longs(1000)), strings);
+
+        // stateful transducers fall back to a sequential reduction
+        assertEquals(10L, (long) fold(2, Fns.<Integer>take(5), sum, Long::sum, input));
+        assertEquals(10L, (long) fold(2, Fns.<Integer>dedupe().comp(take(5)), sum, Long::sum, input));
+    }
+
+    @Test
+    public void testAtomicBooleanCompatibility() throws Exception {
+        // a transducer written against the AtomicBoolean signature
+        ITransducer<Integer, Integer> firstThree = new ITransducer<Integer, Integer>() {
+            @Override
+            public <R> IReducingFunction<R, Integer> apply(IReducingFunction<R, ? super Integer> rf) {
+                return new IReducingFunction<R, Integer>() {
+                    int n = 0;
+                    @Override
+                    public R apply() {
+                        return rf.apply();
+                    }
+
+                    @Override
+                    public R apply(R result) {
+                        return rf.apply(result);
+                    }
+
+                    @Override
+                    public R apply(R result, Integer input, AtomicBoolean reduced) {
+                        if (++n == 3)
+                            reduced.set(true);
+                        return rf.apply(result, input, reduced);
+                    }
+                };
+            }
+        };
+
+        List<String> vals = transduce(firstThree.comp(map(i -> i.toString())), addString, new ArrayList<>(), ints(10));
+
+        assertEquals(Arrays.asList("0", "1", "2"), vals);
+
+        // a step function lambda that stops the reduction
+        List<Integer> nums = transduce(map((Integer i) -> i * 2), (result, input, reduced) -> {
+            result.add(input);
+            reduced.set(result.size() == 2);
+            return result;
+        }, new ArrayList<>(), ints(10));
+
+        assertEquals(Arrays.asList(0, 2), nums);
+
+        // the AtomicBoolean overload of reduce reports early termination
+        AtomicBoolean reduced = new AtomicBoolean();
+        List<Integer> taken = Impl.reduce(Fns.<Integer>take(2).apply(completing((List<Integer> result, Integer input, AtomicBoolean r) -> {
+            result.add(input);
+            return result;
+        })), new ArrayList<>(), ints(10), reduced);
+
+        assertEquals(Arrays.asList(0, 1), taken);
+        assertTrue(reduced.get());
+
+        // a flag reset between steps, as by fanout and groupBy, is not seen as still set
+        Fanout upTo = transduce(map((Integer i) -> i), fanout(upTo(2), upTo(100)), ints(10));
+        assertEquals(Arrays.asList(0, 1), upTo.get(0));
+        assertEquals(ints(10), upTo.get(1));
+        Groups<Integer, List<Integer>> groups = transduce(map((Integer i) -> i), groupBy((Integer i) -> i % 2, upTo(1)), ints(10));
+        assertEquals(Arrays.asList(0), groups.get(0));
+        assertEquals(Arrays.asList(1), groups.get(1));
+
+        // the caller's AtomicBoolean stops the reduction when set mid-way, e.g. by another thread
+        AtomicBoolean cancelled = new AtomicBoolean();
+        List<Integer> cancelledAt = Impl.reduce(completing((List<Integer> result, Integer input, AtomicBoolean r) -> {
+            result.add(input);
+            if (input == 3)
+                cancelled.set(true);
+            return result;
+        }), new ArrayList<>(), ints(10), cancelled);
+        assertEquals(Arrays.asList(0, 1, 2, 3), cancelledAt);
+
+        // the AtomicBoolean overload of a reducing function built on AReducingFunction
+        IReducingFunction<List<Integer>, Integer> two = Fns.<Integer>take(2).apply(FnsTest.<Integer>collect());
+        AtomicBoolean stop = new AtomicBoolean();
+        List<Integer> stepped = new ArrayList<>();
+        for (int i = 0; i < 10 && !stop.get(); i++)
+            stepped = two.apply(stepped, i, stop);
+        assertEquals(Arrays.asList(0, 1), stepped);
+    }
+
+    private static IReducingFunction<List<Integer>, Integer> upTo(final int n) {
+        return new IReducingFunction<List<Integer>, Integer>() {
+            @Override
+            public List<Integer> apply() {
+                return new ArrayList<Integer>();
+            }
+
+            @Override
+            public List<Integer> apply(List<Integer> result) {
+                return result;
+            }
+
+            @Override
+            public List<Integer> apply(List<Integer> result, Integer input, AtomicBoolean reduced) {
+                result.add(input);
+                if (result.size() == n)
+                    reduced.set(true);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testFusion() throws Exception {
+        ITransducer<Integer, Integer> inc = map(i -> i + 1);
+        ITransducer<Integer, Integer> odd = filter(i -> i % 2 != 0);
+        ITransducer<Integer, Integer> notFive = remove(i -> i == 5);
+        ITransducer<Integer, Integer> halfOfSix = keep(i -> i % 6 == 0 ? null : i / 2);
+        ITransducer<String, Integer> str = map(i -> i == 4 ? null : i.toString());
+
+        ITransducer<String, Integer> left = inc.comp(odd).comp(notFive).comp(halfOfSix).comp(inc).comp(str);
+        ITransducer<String, Integer> right = inc.comp(odd.comp(notFive.comp(halfOfSix.comp(inc.comp(str)))));
+
+        assertTrue(left instanceof StatelessTransducer);
+        assertTrue(right instanceof StatelessTransducer);
+
+        // 1..10 -> odd 1,3,5,7,9 -> no 5 -> keep drops multiples of 6, halves -> inc -> null for 4
+        List<String> expected = Arrays.asList("1", "2", null, "5");
+        assertEquals(expected, transduce(left, addString, new ArrayList<>(), ints(10)));
+        assertEquals(expected, transduce(right, addString, new ArrayList<>(), ints(10)));
+
+        // stateful stages split the pipeline into separately fused runs
+        ITransducer<String, Integer> split = inc.comp(odd).comp(take(3)).comp(inc).comp(str);
+
+        assertTrue(split instanceof StatelessTransducer.Composite);
+        List<ITransducer<?, ?>> parts = ((StatelessTransducer.Composite<?, ?, ?>) split).parts();
+        assertEquals(3, parts.size());
+        assertEquals(2, ((StatelessTransducer<?, ?>) parts.get(0)).kinds.length);
+        assertFalse(parts.get(1) instanceof StatelessTransducer);
+        assertEquals(2, ((StatelessTransducer<?, ?>) parts.get(2)).kinds.length);
+        assertFalse(split.isStateless());
+        assertEquals(Arrays.asList("2", null, "6"), transduce(split, addString, new ArrayList<>(), ints(10)));
+
+        // keep pairs with every kind of stage
+        ITransducer<Integer, Integer> keepOdd = keep(i -> i % 2 != 0 ? i : null);
+        ITransducer<Integer, Integer> keepHalf = keep(i -> i % 4 == 1 ? null : i / 2);
+        List<ITransducer<Integer, Integer>> kinds = Arrays.asList(inc, odd, keepOdd, keepHalf);
+        for (ITransducer<Integer, Integer> a : kinds) {
+            for (ITransducer<Integer, Integer> b : kinds) {
+                ITransducer<Integer, Integer> fused = a.comp(b);
+                assertTrue(fused instanceof StatelessTransducer);
+                ITransducer<Integer, Integer> unfused = a.comp(take(Long.MAX_VALUE)).comp(b);
+                assertEquals(transduce(unfused, FnsTest.<Integer>collect(), ints(20)),
+                        transduce(fused, FnsTest.<Integer>collect(), ints(20)));
+            }
+        }
+
+        // deeply nested composites, in either association, flatten into alternating parts
+        ITransducer<Integer, Integer> deepLeft = inc;
+        ITransducer<Integer, Integer> deepRight = inc;
+        for (int i = 0; i < 1000; i++) {
+            deepLeft = deepLeft.comp(take(Long.MAX_VALUE)).comp(inc);
+            deepRight = inc.comp(Fns.<Integer>take(Long.MAX_VALUE).comp(deepRight));
+        }
+        assertEquals(2001, ((StatelessTransducer.Composite<?, ?, ?>) deepLeft).parts().size());
+        assertEquals(2001, ((StatelessTransducer.Composite<?, ?, ?>) deepRight).parts().size());
+        assertEquals(Arrays.asList(1001, 1002), transduce(deepLeft, FnsTest.<Integer>collect(), ints(2)));
+        assertEquals(Arrays.asList(1001, 1002), transduce(deepRight, FnsTest.<Integer>collect(), ints(2)));
+    }
+
+    @Test
+    public void testInputShapes() throws Exception {
+        ITransducer<String, Integer> str = map(i -> i.toString());
+        ITransducer<String, Integer> xf = map((Integer i) -> i + 1).comp(filter(i -> i % 2 == 0)).comp(str);
+        List<String> expected = Arrays.asList("2", "4", "6", "8", "10");
+
+        assertEquals(expected, transduce(xf, addString, new ArrayList<>(), ints(10)));
+        assertEquals(expected, transduce(xf, addString, new ArrayList<>(), new LinkedList<>(ints(10))));
+        assertEquals(expected, transduce(xf, addString, new ArrayList<>(), ints(10).toArray(new Integer[0])));
+        assertEquals(expected, transduce(xf, addString, new ArrayList<>(), ints(10).spliterator()));
+        assertEquals(expected, transduce(xf, addString, new ArrayList<>(), Arrays.asList(ints(10).toArray(new Integer[0]))));
+
+        // lists keep the semantics of their own iterators while being reduced
+        List<Integer> snapshot = new java.util.concurrent.CopyOnWriteArrayList<>(ints(3));
+        IStepFunction<List<Integer>, Integer> addAndGrow = (result, i, r) -> {
+            snapshot.add(i);
+            result.add(i);
+            return result;
+        };
+        assertEquals(Arrays.asList(0, 1, 2), transduce(map((Integer i) -> i), addAndGrow, new ArrayList<>(), snapshot));
+        List<Integer> growing = ints(3);
+        IStepFunction<List<Integer>, Integer> grow = (result, i, r) -> {
+            growing.add(i);
+            return result;
+        };
+        try {
+            transduce(map((Integer i) -> i), grow, new ArrayList<>(), growing);
+            fail();
+        } catch (ConcurrentModificationException e) {
+        }
+
+        // early termination leaves the spliterator positioned after the last element consumed;
+        // take only signals reduced when it sees the element past its limit
+        Spliterator<Integer> naturals = Stream.iterate(0, i -> i + 1).spliterator();
+        assertEquals(Arrays.asList("0", "1", "2"),
+                transduce(Fns.<Integer>take(3).comp(str), addString, new ArrayList<>(), naturals));
+        naturals.tryAdvance(i -> assertEquals(4, (int) i));
+
+        // nested inputs feed a reduction in progress, downstream completes once
+        List<Iterable<Integer>> nested = Arrays.asList(ints(3), Arrays.asList(3, 4, 5));
+        ITransducer<Iterable<Integer>, Iterable<Integer>> cp = Fns.<Integer, Iterable<Integer>>cat().comp(partitionAll(2));
+        List<List<Integer>> parts = transduce(cp, (result, input, reduced) -> {
+            List<Integer> ret = new ArrayList<>();
+            for (Integer i : input) {
+                ret.add(i);
+            }
+            result.add(ret);
+            return result;
+        }, new ArrayList<>(), nested);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3), Arrays.asList(4, 5)), parts);
+    }
+
+    @Test
+    public void testStream() throws Exception {
+        // mapcat expands lazily: only as many source elements as needed are pulled
+        final List<Integer> pulled = new ArrayList<>();
+        ITransducer<Integer, Integer> twice = mapcat(i -> Arrays.asList(i, i));
+        List<Integer> vals = stream(twice, Stream.iterate(0, i -> i + 1).peek(pulled::add))
+                .limit(5)
+                .collect(Collectors.toList());
+        assertEquals(Arrays.asList(0, 0, 1, 1, 2), vals);
+        assertEquals(Arrays.asList(0, 1, 2), pulled);
+
+        // take short-circuits an infinite source
+        assertEquals(Arrays.asList(1, 3, 5), stream(filter((Integer i) -> i % 2 != 0).comp(take(3)),
+                Stream.iterate(0, i -> i + 1)).collect(Collectors.toList()));
+
+        // partitionAll flushes its last partition on completion
+        ITransducer<Iterable<Integer>, Integer> parts = partitionAll(4);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7), Arrays.asList(8, 9)),
+                stream(parts, ints(10).stream()).collect(Collectors.toList()));
+
+        // null elements pass through, and closing the stream closes the source
+        final boolean[] closed = {false};
+        try (Stream<Integer> s = stream(map((Integer i) -> i == 1 ? null : i),
+                ints(3).stream().onClose(() -> closed[0] = true))) {
+            assertEquals(Arrays.asList(0, null, 2), s.collect(Collectors.toList()));
+        }
+        assertTrue(closed[0]);
+    }
+
+    @Test
+    public void testSequence() throws Exception {
+        final int[] mapped = {0};
+        final int[] completed = {0};
+        ITransducer<Integer, Integer> counting = new ITransducer<Integer, Integer>() {
+            @Override
+            public <R> IReducingFunction<R, Integer> apply(IReducingFunction<R, ? super Integer> rf) {
+                return new AReducingFunctionOn<R, Integer, Integer>(rf) {
+                    @Override
+                    public R apply(R result) {
+                        completed[0]++;
+                        return rf.apply(result);
+                    }
+
+                    @Override
+                    public R apply(R result, Integer input, Reduced reduced) {
+                        mapped[0]++;
+                        return rf.apply(result, input * 10, reduced);
+                    }
+                };
+            }
+        };
+
+        Iterator<Integer> it = sequence(counting, ints(1000));
+        assertEquals(0, mapped[0]);
+        assertEquals(0, (int) it.next());
+        assertEquals(10, (int) it.next());
+        assertEquals(2, mapped[0]);
+        assertEquals(0, completed[0]);
+
+        it = sequence(counting.comp(take(2)), ints(1000));
+        assertEquals(Arrays.asList(0, 10), toList(it));
+        assertFalse(it.hasNext());
+        assertEquals(1, completed[0]);
+        try {
+            it.next();
+            fail();
+        } catch (NoSuchElementException e) {
+        }
+
+        ITransducer<Iterable<Integer>, Integer> parts = partitionAll(2);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2)), toList(sequence(parts, ints(3))));
+    }
+
+    @Test
+    public void testEduction() throws Exception {
+        final int[] mapped = {0};
+        Iterable<Integer> odds = eduction(map((Integer i) -> {
+            mapped[0]++;
+            return i;
+        }).comp(filter(i -> i % 2 != 0)), ints(10));
+        assertEquals(0, mapped[0]);
+
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), toList(odds.iterator()));
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9), toList(odds.iterator()));
+        assertEquals(20, mapped[0]);
+
+        assertEquals(Arrays.asList(3, 7), into(Fns.<Integer>take(2).comp(map(i -> i * 2 + 1)), new ArrayList<Integer>(), odds));
+    }
+
+    private static <T> List<T> toList(Iterator<T> it) {
+        List<T> ret = new ArrayList<>();
+        while (it.hasNext()) {
+            ret.add(it.next());
+        }
+        return ret;
+    }
+
+    @Test
+    public void testChunked() throws Exception {
+        ITransducer<Chunk<Integer>, Integer> xf = chunked(4);
+        List<Chunk<Integer>> chunks = into(xf, new ArrayList<Chunk<Integer>>(), ints(10));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6, 7), Arrays.asList(8, 9)), chunks);
+        try {
+            chunks.get(0).add(4);
+            fail();
+        } catch (UnsupportedOperationException e) {
+        }
+
+        // a downstream that releases each chunk lets the transducer reuse it
+        final Set<Chunk<Integer>> distinct = Collections.newSetFromMap(new IdentityHashMap<>());
+        long sum = transduce(Fns.<Integer>chunked(8, 2), new AReducingFunction<Long, Chunk<Integer>>() {
+            @Override
+            public Long apply() {
+                return 0L;
+            }
+
+            @Override
+            public Long apply(Long result, Chunk<Integer> input, Reduced reduced) {
+                distinct.add(input);
+                for (int i = 0; i < input.size(); i++) {
+                    result += input.get(i);
+                }
+                input.release();
+                return result;
+            }
+        }, ints(1000));
+        assertEquals(499500L, sum);
+        assertEquals(2, distinct.size());
+
+        // releasing a chunk twice would put it in the pool twice
+        for (int pooled : new int[]{0, 2}) {
+            Chunk<Integer> once = into(Fns.<Integer>chunked(4, pooled), new ArrayList<Chunk<Integer>>(), ints(4)).get(0);
+            once.release();
+            try {
+                once.release();
+                fail("released twice");
+            } catch (IllegalStateException e) {
+            }
+        }
+
+        // partitions are handed over, so no two are the same list
+        ITransducer<Iterable<Integer>, Integer> parts = partitionAll(3);
+        List<Iterable<Integer>> lists = into(parts, new ArrayList<Iterable<Integer>>(), ints(7));
+        assertFalse(lists.get(0) == lists.get(1));
+        assertEquals(Arrays.asList(6), lists.get(2));
+    }
+
+    private static <A> IReducingFunction<List<List<A>>, Window<A>> copyWindows() {
+        return new AReducingFunction<List<List<A>>, Window<A>>() {
+            @Override
+            public List<List<A>> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<List<A>> apply(List<List<A>> result, Window<A> input, Reduced reduced) {
+                result.add(new ArrayList<>(input));
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testSliding() throws Exception {
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(1, 2, 3), Arrays.asList(2, 3, 4),
+                Arrays.asList(3, 4), Arrays.asList(4)),
+                transduce(Fns.<Integer>sliding(3, 1), FnsTest.<Integer>copyWindows(), ints(5)));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(3, 4), Arrays.asList(6)),
+                transduce(Fns.<Integer>sliding(2, 3), FnsTest.<Integer>copyWindows(), ints(7)));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(3, 4, 5), Arrays.asList(6)),
+                transduce(Fns.<Integer>sliding(3, 3), FnsTest.<Integer>copyWindows(), ints(7)));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2), Arrays.asList(2, 3, 4)),
+                transduce(Fns.<Integer>sliding(3, 2).comp(take(2)), FnsTest.<Integer>copyWindows(), ints(100)));
+
+        List<WindowStats> stats = into(slidingStats(3, 2, (Integer i) -> i % 4), new ArrayList<WindowStats>(), ints(6));
+        // values 0 1 2 3 0 1: windows [0 1 2], [2 3 0], [0 1]
+        assertEquals(3, stats.size());
+        assertEquals(3.0, stats.get(0).sum(), 0.0);
+        assertEquals(0.0, stats.get(1).min(), 0.0);
+        assertEquals(3.0, stats.get(1).max(), 0.0);
+        assertEquals(2, stats.get(2).count());
+        assertEquals(0.5, stats.get(2).mean(), 0.0);
+        assertEquals(4, stats.get(2).start());
+    }
+
+    @Test
+    public void testTimeWindows() throws Exception {
+        // timestamps 0, 3, 6, ... 27
+        ToLongFunction<Integer> time = i -> i * 3L;
+        List<List<Integer>> tumbled = transduce(Fns.<Integer>tumbling(10, time), FnsTest.<Integer>copyWindows(), ints(10));
+        assertEquals(Arrays.asList(Arrays.asList(0, 1, 2, 3), Arrays.asList(4, 5, 6), Arrays.asList(7, 8, 9)), tumbled);
+
+        // gaps produce no empty windows, and a late input is dropped
+        List<Long> times = Arrays.asList(1L, 2L, 35L, 20L, 36L, 71L);
+        List<List<Long>> gapped = transduce(Fns.<Long>tumbling(10, t -> t), FnsTest.<Long>copyWindows(), times);
+        assertEquals(Arrays.asList(Arrays.asList(1L, 2L), Arrays.asList(35L, 36L), Arrays.asList(71L)), gapped);
+
+        List<List<Long>> hopped = transduce(Fns.<Long>hopping(10, 5, t -> t), FnsTest.<Long>copyWindows(),
+                Arrays.asList(1L, 7L, 12L));
+        // windows [-5, 5) [0, 10) [5, 15) [10, 20)
+        assertEquals(Arrays.asList(Arrays.asList(1L), Arrays.asList(1L, 7L), Arrays.asList(7L, 12L), Arrays.asList(12L)), hopped);
+    }
+
+    @Test
+    public void testWindowStats() throws Exception {
+        Random random = new Random(42);
+        List<long[]> events = new ArrayList<>();
+        long t = 0;
+        for (int i = 0; i < 2000; i++) {
+            t += random.nextInt(4);
+            events.add(new long[]{t, random.nextInt(1000) - 500});
+        }
+        List<WindowStats> stats = into(Fns.<long[]>hoppingStats(50, 7, e -> e[0], e -> e[1]),
+                new ArrayList<WindowStats>(), events);
+        assertFalse(stats.isEmpty());
+        for (WindowStats w : stats) {
+            int count = 0;
+            double sum = 0, min = Double.POSITIVE_INFINITY, max = Double.NEGATIVE_INFINITY;
+            for (long[] e : events) {
+                if (e[0] >= w.start() && e[0] < w.end()) {
+                    count++;
+                    sum += e[1];
+                    min = Math.min(min, e[1]);
+                    max = Math.max(max, e[1]);
+                }
+            }
+            assertEquals(w.toString(), count, w.count());
+            assertEquals(w.toString(), sum, w.sum(), 1e-9);
+            assertEquals(w.toString(), min, w.min(), 0.0);
+            assertEquals(w.toString(), max, w.max(), 0.0);
+            assertEquals(0, w.start() % 7);
+        }
+        assertEquals(events.get(events.size() - 1)[0] / 7, stats.get(stats.size() - 1).start() / 7);
+    }
+
+    private static <A> IReducingFunction<List<A>, A> collect() {
+        return new AReducingFunction<List<A>, A>() {
+            @Override
+            public List<A> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<A> apply(List<A> result, A input, Reduced reduced) {
+                result.add(input);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicInteger maxRunning = new AtomicInteger();
+        final AtomicInteger started = new AtomicInteger();
+        ITransducer<Integer, Integer> slow = map((Integer i) -> {
+            started.incrementAndGet();
+            maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep((i * 7) % 5);
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            running.decrementAndGet();
+            if (i == 30)
+                throw new IllegalStateException("boom");
+            return i;
+        });
+        ITransducer<Integer, Integer> xf = slow.comp(mapcat(i -> Arrays.asList(i, -i)));
+        ExecutorService pool = Executors.newFixedThreadPool(4);
+        try {
+            List<Integer> expected = transduce(xf, FnsTest.<Integer>collect(), ints(30));
+            assertEquals(expected, pipeline(4, xf, FnsTest.<Integer>collect(), ints(30), pool));
+            assertTrue(maxRunning.get() > 1);
+            assertTrue(maxRunning.get() <= 4);
+
+            // stateful stages see one element at a time
+            ITransducer<Iterable<Integer>, Integer> parts = partitionAll(2);
+            assertEquals(10, pipeline(3, parts, FnsTest.<Iterable<Integer>>collect(), ints(10), pool).size());
+
+            started.set(0);
+            List<Integer> first = pipeline(4, xf, Fns.<Integer>take(3).apply(FnsTest.<Integer>collect()), ints(1000), pool);
+            assertEquals(Arrays.asList(0, 0, 1), first);
+            assertTrue(started.get() <= 2 + 4);
+
+            final List<Integer> seen = new ArrayList<>();
+            try {
+                pipeline(4, xf, new AReducingFunction<List<Integer>, Integer>() {
+                    @Override
+                    public List<Integer> apply() {
+                        return seen;
+                    }
+
+                    @Override
+                    public List<Integer> apply(List<Integer> result, Integer input, Reduced reduced) {
+                        result.add(input);
+                        return result;
+                    }
+                }, ints(100), pool);
+                fail();
+            } catch (IllegalStateException e) {
+                assertEquals("boom", e.getMessage());
+            }
+            assertEquals(60, seen.size());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testGroupBy() throws Exception {
+        IReducingFunction<Groups<Integer, List<Integer>>, Integer> byMod =
+                groupBy((Integer i) -> i % 3, Fns.<Integer>take(2), FnsTest.<Integer>collect());
+
+        Groups<Integer, List<Integer>> groups = transduce(map((Integer i) -> i), byMod, ints(10));
+
+        assertEquals(3, groups.size());
+        assertEquals(Arrays.asList(0, 3), groups.get(0));
+        assertEquals(Arrays.asList(1, 4), groups.get(1));
+        assertEquals(Arrays.asList(2, 5), groups.get(2));
+        assertTrue(groups.isReduced(0));
+        assertNull(groups.get(3));
+
+        Groups<Integer, List<Integer>> small = transduce(map((Integer i) -> i), byMod, ints(4));
+        assertEquals(Arrays.asList(0, 3), small.get(0));
+        assertEquals(Arrays.asList(1), small.get(1));
+        assertFalse(small.isReduced(1));
+
+        // completion reaches each key's reduction
+        Groups<Boolean, List<Iterable<Integer>>> parts = transduce(map((Integer i) -> i),
+                groupBy((Integer i) -> i % 2 == 0, Fns.<Integer>partitionAll(2), FnsTest.<Iterable<Integer>>collect()),
+                ints(7));
+        assertEquals(2, parts.get(true).size());
+        assertEquals(2, parts.get(false).size());
+        assertEquals(Arrays.asList(5), parts.get(false).get(1));
+
+        IReducingFunction<Groups<Integer, List<Integer>>, Integer> all =
+                groupBy((Integer i) -> i % 100, FnsTest.<Integer>collect());
+        Groups<Integer, List<Integer>> folded = fold(8, map((Integer i) -> i), all, (l, r) -> l.merge(r, (a, b) -> {
+            a.addAll(b);
+            return a;
+        }), ints(10000));
+        assertEquals(100, folded.size());
+        for (Map.Entry<Integer, List<Integer>> e : folded.entrySet()) {
+            assertEquals(100, e.getValue().size());
+            assertEquals(e.getKey(), e.getValue().get(0));
+        }
+
+        // a reduced signal for one key in one chunk does not leak into other keys or chunks
+        IReducingFunction<Long, Integer> countUntilEven = new AReducingFunction<Long, Integer>() {
+            @Override
+            public Long apply() {
+                return 0L;
+            }
+
+            @Override
+            public Long apply(Long result, Integer input, Reduced reduced) {
+                reduced.set(input % 2 == 0);
+                return result + 1;
+            }
+        };
+        Groups<Integer, Long> counts = fold(1000, map((Integer i) -> i), groupBy((Integer i) -> i % 2, countUntilEven),
+                (l, r) -> l.merge(r, Long::sum), ints(1000000));
+        assertEquals(500000L, (long) counts.get(1));
+        assertFalse(counts.isReduced(1));
+        assertTrue(counts.isReduced(0));
+
+        // per-key state cannot be merged
+        try {
+            fold(1000, map((Integer i) -> i), byMod, (l, r) -> l.merge(r, (a, b) -> a), ints(10000));
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testFrequencies() throws Exception {
+        Frequencies<String> freqs = transduce(map((Integer i) -> i), frequencies((Integer i) -> i % 3 == 0 ? null : "" + (i % 3)), ints(10));
+
+        assertEquals(3, freqs.size());
+        assertEquals(4L, freqs.get(null));
+        assertEquals(3L, freqs.get("1"));
+        assertEquals(3L, freqs.get("2"));
+        assertEquals(0L, freqs.get("3"));
+
+        IReducingFunction<Frequencies<Integer>, Integer> byValue = frequencies((Integer i) -> i % 1000);
+        Frequencies<Integer> counts = fold(16, map((Integer i) -> i), byValue, Frequencies::merge, ints(100000));
+        assertEquals(1000, counts.size());
+        Map<Integer, Long> map = counts.toMap();
+        for (int i = 0; i < 1000; i++)
+            assertEquals(100L, (long) map.get(i));
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        List<String> input = Arrays.asList("a", "b", new String("a"), null, "c", "b", null);
+        assertEquals(Arrays.asList("a", "b", null, "c"),
+                transduce(Fns.<String>distinct(), addString, new ArrayList<String>(), input));
+
+        Distinct exact = Distinct.exact();
+        List<Integer> taken = transduce(Fns.<Integer>distinct(exact).comp(take(3)), FnsTest.<Integer>collect(),
+                Arrays.asList(1, 1, 2, 1, 3, 4));
+        assertEquals(Arrays.asList(1, 2, 3), taken);
+        assertEquals(0.0, exact.falsePositiveRate(1000000), 0.0);
+
+        Distinct approx = Distinct.approximate(10000, 0.001);
+        List<Integer> many = new ArrayList<>(ints(10000));
+        many.addAll(ints(10000));
+        int n = transduce(Fns.<Integer>distinct(approx), FnsTest.<Integer>collect(), many).size();
+        assertTrue(n <= 10000 && n > 9950);
+        assertTrue(approx.falsePositiveRate(10000) > 0.0005 && approx.falsePositiveRate(10000) < 0.002);
+        assertTrue(approx.falsePositiveRate(1000) < approx.falsePositiveRate(10000));
+
+        // by a 64-bit key, exactly and approximately
+        List<String> words = Arrays.asList("a", "bb", "cc", "d", "eee");
+        assertEquals(Arrays.asList("a", "bb", "eee"),
+                transduce(Fns.<String>distinct(exact, String::length), addString, new ArrayList<String>(), words));
+        assertEquals(Arrays.asList("a", "bb", "eee"),
+                transduce(Fns.<String>distinct(approx, String::length), addString, new ArrayList<String>(), words));
+        List<Long> longs = new ArrayList<>();
+        for (long i = 0; i < 20000; i++)
+            longs.add((i % 10000) << 32 | (i % 10000));
+        int keyed = transduce(Fns.<Long>distinct(approx, Long::longValue), FnsTest.<Long>collect(), longs).size();
+        assertTrue(keyed <= 10000 && keyed > 9950);
+        // the same longs, by hash code, all collide with 0
+        assertEquals(1, transduce(Fns.<Long>distinct(approx), FnsTest.<Long>collect(), longs).size());
+
+        // a mode has no state of its own, so reductions sharing it do not interfere
+        ITransducer<Integer, Integer> shared = distinct(exact);
+        IReducingFunction<List<Integer>, Integer> first = shared.apply(FnsTest.<Integer>collect());
+        IReducingFunction<List<Integer>, Integer> second = shared.apply(FnsTest.<Integer>collect());
+        List<Integer> a = first.apply(first.apply(), 1, new Reduced());
+        List<Integer> b = second.apply(second.apply(), 1, new Reduced());
+        assertEquals(Arrays.asList(1), a);
+        assertEquals(Arrays.asList(1), b);
+    }
+
+    @Test
+    public void testRandomSample() throws Exception {
+        ITransducer<Integer, Integer> xf = randomSample(0.1, 42L);
+        List<Integer> sample = transduce(xf, FnsTest.<Integer>collect(), ints(100000));
+
+        assertEquals(sample, transduce(xf, FnsTest.<Integer>collect(), ints(100000)));
+        assertTrue(sample.size() > 9000 && sample.size() < 11000);
+        assertNotEquals(sample, transduce(Fns.<Integer>randomSample(0.1, 43L), FnsTest.<Integer>collect(), ints(100000)));
+
+        assertEquals(ints(10), transduce(Fns.<Integer>randomSample(1.0, 1L), FnsTest.<Integer>collect(), ints(10)));
+        assertTrue(transduce(Fns.<Integer>randomSample(0.0, 1L), FnsTest.<Integer>collect(), ints(10)).isEmpty());
+        assertTrue(transduce(Fns.<Integer>randomSample(0.5), FnsTest.<Integer>collect(), ints(100)).size() < 100);
+    }
+
+    @Test
+    public void testReservoirSample() throws Exception {
+        assertEquals(ints(5), transduce(Fns.<Integer>reservoirSample(10), FnsTest.<Integer>collect(), ints(5)));
+
+        ITransducer<Integer, Integer> xf = reservoirSample(100, 7L);
+        List<Integer> sample = transduce(xf, FnsTest.<Integer>collect(), ints(100000));
+        assertEquals(100, sample.size());
+        assertEquals(100, new HashSet<>(sample).size());
+        assertEquals(sample, transduce(xf, FnsTest.<Integer>collect(), ints(100000)));
+
+        // without a seed, each reduction through one transducer draws its own sample
+        ITransducer<Integer, Integer> unseeded = reservoirSample(100);
+        Set<List<Integer>> samples = new HashSet<>();
+        for (int i = 0; i < 5; i++)
+            samples.add(transduce(unseeded, FnsTest.<Integer>collect(), ints(100000)));
+        assertEquals(5, samples.size());
+
+        // every position is about equally likely to be kept
+        int[] hits = new int[10];
+        for (long seed = 0; seed < 2000; seed++) {
+            for (int i : transduce(Fns.<Integer>reservoirSample(5, seed), FnsTest.<Integer>collect(), ints(50)))
+                hits[i / 5]++;
+        }
+        for (int h : hits)
+            assertTrue(h > 800 && h < 1200);
+
+        assertEquals(2, transduce(Fns.<Integer>reservoirSample(10, 1L).comp(take(2)), FnsTest.<Integer>collect(), ints(100)).size());
+    }
+
+    @Test
+    public void testMapCached() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Cache<Integer, String> cache = new Cache<>(100);
+        ITransducer<String, Integer> xf = mapCached((Integer i) -> {
+            calls.incrementAndGet();
+            return "v" + i;
+        }, cache);
+
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < 1000; i++)
+            input.add(i % 10);
+
+        List<String> out = transduce(xf, FnsTest.<String>collect(), input);
+        assertEquals(1000, out.size());
+        assertEquals("v3", out.get(13));
+        assertEquals(10, calls.get());
+        assertEquals(10, cache.misses());
+        assertEquals(990, cache.hits());
+        assertEquals(0, cache.evictions());
+        assertEquals(10, cache.size());
+
+        // shared across threads by parallel fold
+        List<String> folded = fold(50, xf, FnsTest.<String>collect(), (l, r) -> {
+            l.addAll(r);
+            return l;
+        }, input);
+        assertEquals(out, folded);
+        assertEquals(10, calls.get());
+
+        Cache<Integer, Integer> small = new Cache<>(4);
+        assertEquals(4, small.maxEntries());
+        transduce(Fns.<Integer, Integer>mapCached(i -> i, small), FnsTest.<Integer>collect(), ints(10));
+        assertEquals(4, small.size());
+        assertEquals(6, small.evictions());
+    }
+
+    @Test
+    public void testKeepCached() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        ITransducer<Integer, Integer> xf = keepCached((Integer i) -> {
+            calls.incrementAndGet();
+            return i % 2 == 0 ? null : i;
+        }, 16);
+
+        List<Integer> input = new ArrayList<>(ints(10));
+        input.addAll(ints(10));
+        assertEquals(Arrays.asList(1, 3, 5, 7, 9, 1, 3, 5, 7, 9), transduce(xf, FnsTest.<Integer>collect(), input));
+        assertEquals(10, calls.get());
+        assertTrue(xf.comp(map((Integer i) -> i)).isStateless());
+    }
+
+    @Test
+    public void testCompile() throws Exception {
+        ITransducer<Iterable<String>, Integer> xf = map((Integer i) -> i * 3)
+                .comp(filter((Integer i) -> i % 2 == 0))
+                .comp(map((Integer i) -> i.toString()))
+                .comp(dedupe())
+                .comp(take(20))
+                .comp(partitionAll(3));
+        ITransducer<Iterable<String>, Integer> compiled = Fns.compile(xf);
+
+        List<Iterable<String>> expected = transduce(xf, FnsTest.<Iterable<String>>collect(), ints(100));
+        assertEquals(expected, transduce(compiled, FnsTest.<Iterable<String>>collect(), ints(100)));
+        // state is per reducing function, as before
+        assertEquals(expected, transduce(compiled, FnsTest.<Iterable<String>>collect(), ints(100)));
+        assertEquals(expected, transduce(compiled, FnsTest.<Iterable<String>>collect(), ints(100).toArray(new Integer[0])));
+
+        IReducingFunction<List<Iterable<String>>, Integer> plain = xf.apply(FnsTest.<Iterable<String>>collect());
+        IReducingFunction<List<Iterable<String>>, Integer> fast = compiled.apply(FnsTest.<Iterable<String>>collect());
+        assertNotEquals(plain.getClass(), fast.getClass());
+        assertEquals(fast.getClass(), compiled.apply(FnsTest.<Iterable<String>>collect()).getClass());
+        assertEquals(((AReducingFunctionOn<?, ?, ?>) plain).rf.getClass().getSuperclass(),
+                ((AReducingFunctionOn<?, ?, ?>) fast).rf.getClass().getSuperclass());
+
+        // stages that refer to each other by class are left as they are
+        ITransducer<Integer, Integer> counted = Fns.compile(instrument("compiled", filter((Integer i) -> i > 10)));
+        assertEquals(89, transduce(counted, FnsTest.<Integer>collect(), ints(100)).size());
+        assertEquals(89, Instrumentation.stats("compiled").out());
+
+        assertTrue(Fns.compile(map((Integer i) -> i)).isStateless());
+    }
+
+    @Test
+    public void testFanout() throws Exception {
+        final AtomicInteger stepped = new AtomicInteger();
+        IReducingFunction<Long, Integer> sum = new AReducingFunction<Long, Integer>() {
+            @Override
+            public Long apply() {
+                return 0L;
+            }
+
+            @Override
+            public Long apply(Long result, Integer input, Reduced reduced) {
+                stepped.incrementAndGet();
+                return result + input;
+            }
+        };
+
+        Fanout all = transduce(map((Integer i) -> i), fanout(sum,
+                Fns.<Integer>filter(i -> i % 2 == 0).apply(FnsTest.<Integer>collect()),
+                Fns.<Integer>take(3).apply(FnsTest.<Integer>collect()),
+                Fns.<Integer>partitionAll(4).apply(FnsTest.<Iterable<Integer>>collect())), ints(10));
+
+        assertEquals(4, all.size());
+        assertEquals(45L, (long) all.<Long>get(0));
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), all.get(1));
+        assertEquals(Arrays.asList(0, 1, 2), all.get(2));
+        assertTrue(all.isReduced(2));
+        assertFalse(all.isReduced(0));
+        assertEquals(3, all.<List<Iterable<Integer>>>get(3).size());
+
+        // the reduction stops once every branch is reduced
+        stepped.set(0);
+        Fanout firsts = transduce(map((Integer i) -> i), fanout(Fns.<Integer>take(2).apply(sum),
+                Fns.<Integer>takeWhile(i -> i < 5).apply(FnsTest.<Integer>collect())), ints(1000));
+        assertEquals(1L, (long) firsts.<Long>get(0));
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), firsts.get(1));
+        assertEquals(2, stepped.get());
+        assertEquals(Arrays.asList(1L, Arrays.asList(0, 1, 2, 3, 4)), firsts.toList());
+    }
+
+    @Test
+    public void testFanoutFold() throws Exception {
+        IReducingFunction<Long, Integer> sum = new AReducingFunction<Long, Integer>() {
+            @Override
+            public Long apply() {
+                return 0L;
+            }
+
+            @Override
+            public Long apply(Long result, Integer input, Reduced reduced) {
+                return result + input;
+            }
+        };
+        // every chunk but the first stops its takeWhile branch at once, while
+        // the sum branch of the other chunks must go on
+        IReducingFunction<Fanout, Integer> rf = fanout(sum,
+                Fns.<Integer>takeWhile(i -> i < 5).apply(FnsTest.<Integer>collect()));
+        BinaryOperator<Fanout> combiner = (a, b) -> {
+            a.results[0] = a.<Long>get(0) + b.<Long>get(0);
+            a.<List<Integer>>get(1).addAll(b.get(1));
+            return a;
+        };
+        for (int i = 0; i < 20; i++) {
+            Fanout f = fold(2, map((Integer x) -> x), rf, combiner, ints(100000));
+            assertEquals(4999950000L, (long) f.<Long>get(0));
+            assertEquals(Arrays.asList(0, 1, 2, 3, 4), f.get(1));
+        }
+    }
+
+    @Test
+    public void testMultiplex() throws Exception {
+        ITransducer<Object, Integer> xf = multiplex(map((Integer i) -> "s" + i), take(2), partitionAll(2));
+
+        assertEquals(Arrays.asList("s0", 0, "s1", 1, Arrays.asList(0, 1), "s2", "s3", Arrays.asList(2, 3), "s4",
+                Arrays.asList(4)), transduce(xf, FnsTest.<Object>collect(), ints(5)));
+
+        assertEquals(Arrays.asList("s0", 0, "s1"), transduce(xf.comp(take(3)), FnsTest.<Object>collect(), ints(5)));
+
+        // a downstream that stops itself gets no flushes after it has, only its completion
+        IReducingFunction<List<Object>, Object> three = new AReducingFunction<List<Object>, Object>() {
+            @Override
+            public List<Object> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<Object> apply(List<Object> result) {
+                result.add("done");
+                return result;
+            }
+
+            @Override
+            public List<Object> apply(List<Object> result, Object input, Reduced reduced) {
+                result.add(input);
+                if (result.size() == 3)
+                    reduced.set(true);
+                return result;
+            }
+        };
+        assertEquals(Arrays.asList("s0", 0, "s1", "done"), transduce(xf, three, ints(5)));
+        assertEquals(Arrays.asList("s0", 0, "s1", "done"),
+                transduce(multiplex(map((Integer i) -> "s" + i), take(2), partitionAll(3)), three, ints(2)));
+
+        ITransducer<Integer, Integer> firsts = multiplex(Fns.<Integer>take(1), Fns.<Integer>take(2));
+        assertEquals(Arrays.asList(0, 0, 1), transduce(firsts, FnsTest.<Integer>collect(), ints(1000)));
+    }
+
+    @Test
+    public void testTopN() throws Exception {
+        List<Integer> input = new ArrayList<>();
+        for (int i = 0; i < 10000; i++)
+            input.add((i * 7919) % 10007);
+
+        List<Integer> sorted = new ArrayList<>(input);
+        Collections.sort(sorted);
+        List<Integer> expectedTop = new ArrayList<>(sorted.subList(sorted.size() - 5, sorted.size()));
+        Collections.reverse(expectedTop);
+
+        assertEquals(expectedTop, transduce(Fns.<Integer>topN(5, Comparator.naturalOrder()), FnsTest.<Integer>collect(), input));
+        assertEquals(expectedTop, transduce(Fns.<Integer>topN(5, (Integer i) -> (long) i), FnsTest.<Integer>collect(), input));
+        assertEquals(sorted.subList(0, 5), transduce(Fns.<Integer>bottomN(5, Comparator.naturalOrder()), FnsTest.<Integer>collect(), input));
+        assertEquals(sorted.subList(0, 5), transduce(Fns.<Integer>bottomN(5, (Integer i) -> (long) i), FnsTest.<Integer>collect(), input));
+
+        assertEquals(Arrays.asList(2, 1, 0), transduce(Fns.<Integer>topN(10, Comparator.naturalOrder()), FnsTest.<Integer>collect(), ints(3)));
+        assertEquals(expectedTop.subList(0, 2), transduce(Fns.<Integer>topN(5, Comparator.naturalOrder()).comp(take(2)),
+                FnsTest.<Integer>collect(), input));
+
+        // keys at the ends of the long range
+        List<Long> extremes = Arrays.asList(0L, Long.MAX_VALUE, Long.MIN_VALUE, -1L);
+        assertEquals(Arrays.asList(Long.MIN_VALUE, -1L), transduce(Fns.<Long>bottomN(2, (Long l) -> l), FnsTest.<Long>collect(), extremes));
+        assertEquals(Arrays.asList(Long.MAX_VALUE, 0L), transduce(Fns.<Long>topN(2, (Long l) -> l), FnsTest.<Long>collect(), extremes));
+    }
+
+    @Test
+    public void testGreatest() throws Exception {
+        List<Integer> input = ints(100000);
+        Collections.shuffle(input, new Random(1));
+
+        TopN<Integer> top = fold(1000, map((Integer i) -> i), greatest(3, Comparator.<Integer>naturalOrder()), TopN::merge, input);
+        assertEquals(Arrays.asList(99999, 99998, 99997), top.toList());
+
+        TopN<Integer> bottom = fold(1000, map((Integer i) -> i), least(3, (Integer i) -> (long) i), TopN::merge, input);
+        assertEquals(Arrays.asList(0, 1, 2), bottom.toList());
+        assertEquals(3, bottom.size());
+    }
+
+    @Test
+    public void testToCollector() throws Exception {
+        ITransducer<String, Integer> xf = filter((Integer i) -> i % 3 == 0).comp(map(i -> i.toString()));
+        BinaryOperator<List<String>> concat = (l, r) -> {
+            l.addAll(r);
+            return l;
+        };
+
+        List<String> expected = transduce(xf, FnsTest.<String>collect(), ints(100000));
+        assertEquals(expected, ints(100000).stream().collect(toCollector(xf, FnsTest.<String>collect(), concat)));
+        assertEquals(expected, ints(100000).parallelStream().collect(toCollector(xf, FnsTest.<String>collect(), concat)));
+
+        // stateful transducers run in sequential streams, and reduced ignores the rest
+        ITransducer<String, Integer> firsts = xf.comp(take(3));
+        assertEquals(Arrays.asList("0", "3", "6"), ints(100).stream().collect(toCollector(firsts, FnsTest.<String>collect(), concat)));
+        try {
+            ints(100000).parallelStream().collect(toCollector(firsts, FnsTest.<String>collect(), concat));
+            fail();
+        } catch (IllegalStateException e) {
+        }
+
+        ITransducer<Iterable<Integer>, Integer> parts = partitionAll(3);
+        assertEquals(4, ints(10).stream().collect(toCollector(parts, FnsTest.<Iterable<Integer>>collect(), (l, r) -> l)).size());
+    }
+
+    @Test
+    public void testFromCollector() throws Exception {
+        ITransducer<String, Integer> xf = filter((Integer i) -> i % 3 == 0).comp(map(i -> i.toString()));
+
+        assertEquals("0,3,6,9", transduce(xf, fromCollector(Collectors.joining(",")), ints(10)).get());
+        assertEquals("0,3", transduce(xf.comp(take(2)), fromCollector(Collectors.joining(",")), ints(10)).get());
+
+        Map<Integer, Long> counts = transduce(map((Integer i) -> i),
+                fromCollector(Collectors.groupingBy((Integer i) -> i % 2, Collectors.counting())), ints(9)).get();
+        assertEquals(5L, (long) counts.get(0));
+        assertEquals(4L, (long) counts.get(1));
+
+        // an explicit initial value, which completion finishes like one from the reducing function
+        Collector<CharSequence, ?, String> joining = Collectors.joining(",", "[", "]");
+        Collected<CharSequence, String> init = Collected.of(joining);
+        assertFalse(init.isFinished());
+        Collected<CharSequence, String> joined = transduce(xf, fromCollector(joining), init, ints(10));
+        assertSame(init, joined);
+        assertEquals("[0,3,6,9]", joined.get());
+        try {
+            Collected.of(joining).get();
+            fail();
+        } catch (IllegalStateException e) {
+        }
+    }
+
+    @Test
+    public void testMerged() throws Exception {
+        List<List<Integer>> shards = Arrays.asList(
+                Arrays.asList(0, 3, 6, 9), Collections.<Integer>emptyList(), Arrays.asList(1, 4, 5), Arrays.asList(2, 7, 8));
+        Iterable<Integer> merged = merged(Comparator.<Integer>naturalOrder(), shards);
+        assertEquals(ints(10), transduce(map((Integer i) -> i), FnsTest.<Integer>collect(), merged));
+        assertEquals(ints(10), transduce(map((Integer i) -> i), FnsTest.<Integer>collect(), merged));
+
+        assertEquals(Arrays.asList(9, 8, 7, 6, 5, 4, 3, 2, 1, 0), transduceMerged(map((Integer i) -> i), FnsTest.<Integer>collect(),
+                Comparator.<Integer>reverseOrder(), Arrays.asList(Arrays.asList(9, 5, 4, 0), Arrays.asList(8, 7, 6, 3, 2, 1))));
+
+        // equal elements come from the inputs in list order
+        List<String> ties = transduceMerged(map((String s) -> s), FnsTest.<String>collect(), Comparator.comparing((String s) -> s.charAt(0)),
+                Arrays.asList(Arrays.asList("a1", "b1"), Arrays.asList("a2", "b2"), Arrays.asList("a3")));
+        assertEquals(Arrays.asList("a1", "a2", "a3", "b1", "b2"), ties);
+
+        assertTrue(transduceMerged(map((Integer i) -> i), FnsTest.<Integer>collect(), Comparator.<Integer>naturalOrder(),
+                Collections.<List<Integer>>emptyList()).isEmpty());
+    }
+
+    @Test
+    public void testTransduceMergedReduced() throws Exception {
+        final AtomicInteger pulled = new AtomicInteger();
+        List<Iterable<Integer>> shards = new ArrayList<Iterable<Integer>>();
+        for (int k = 0; k < 3; k++) {
+            final int offset = k;
+            shards.add(() -> new Iterator<Integer>() {
+                int i = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return i < 1000;
+                }
+
+                @Override
+                public Integer next() {
+                    pulled.incrementAndGet();
+                    return 3 * i++ + offset;
+                }
+            });
+        }
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4), transduceMerged(Fns.<Integer>take(5), FnsTest.<Integer>collect(),
+                Comparator.<Integer>naturalOrder(), shards));
+        // one head per input, then one pull per element after the first up to the one past the limit
+        assertEquals(8, pulled.get());
+
+        pulled.set(0);
+        assertEquals(Arrays.asList(0, 1, 2), transduceMerged(takeWhile((Integer i) -> i < 3), FnsTest.<Integer>collect(),
+                new ArrayList<Integer>(), Comparator.<Integer>naturalOrder(), shards));
+        assertEquals(6, pulled.get());
+    }
+}
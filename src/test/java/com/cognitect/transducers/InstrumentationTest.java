@@ -0,0 +1,121 @@
+package com.cognitect.transducers;
+
+import org.junit.After;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+
+import static com.cognitect.transducers.Fns.*;
+
+public class InstrumentationTest {
+
+    private List<Integer> ints(final int n) {
+        return new ArrayList<Integer>(n) {{
+            for(int i = 0; i < n; i++) {
+                add(i);
+            }
+        }};
+    }
+
+    private static final IReducingFunction<Long, Object> count = new AReducingFunction<Long, Object>() {
+        @Override
+        public Long apply() {
+            return 0L;
+        }
+
+        @Override
+        public Long apply(Long result, Object input, Reduced reduced) {
+            return result + 1;
+        }
+    };
+
+    @After
+    public void tearDown() {
+        Instrumentation.setEnabled(true);
+        Instrumentation.setSampleInterval(16);
+    }
+
+    @Test
+    public void testInstrument() throws Exception {
+        ITransducer<Integer, Integer> xf = instrument("evens", filter((Integer i) -> i % 2 == 0));
+
+        assertEquals(5000L, (long) transduce(xf, count, ints(10000)));
+        StageStats stats = Instrumentation.stats("evens");
+        assertEquals(10000, stats.in());
+        assertEquals(5000, stats.out());
+        assertEquals(0.5, stats.dropRatio(), 1e-9);
+        assertEquals(1, stats.completions());
+        assertEquals(0, stats.terminations());
+        assertTrue(stats.nanos() > 0);
+
+        transduce(xf.comp(take(3)), count, ints(10000));
+        assertEquals(1, stats.terminations());
+        assertEquals(2, stats.completions());
+        assertEquals(10007, stats.in());
+
+        Instrumentation.reset();
+        assertEquals(0, stats.in());
+    }
+
+    @Test
+    public void testInstrumentStages() throws Exception {
+        ITransducer<Integer, Integer> xf = instrumentStages("pipe",
+                map((Integer i) -> i + 1).comp(filter((Integer i) -> i % 3 == 0)).comp(partitionAll(2)).comp(cat()));
+
+        assertEquals(3333L, (long) transduce(xf, count, ints(10000)));
+        assertEquals(10000, Instrumentation.stats("pipe[0]:map").out());
+        assertEquals(3333, Instrumentation.stats("pipe[1]:filter").out());
+        assertEquals(1667, Instrumentation.stats("pipe[2]").out());
+        assertEquals(1667, Instrumentation.stats("pipe[3]").in());
+        assertEquals(3333, Instrumentation.stats("pipe[3]").out());
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        final List<String> seen = new ArrayList<>();
+        IStageListener listener = (stats, in, out, nanos, terminated) ->
+                seen.add(stats.name() + " " + in + " " + out + " " + terminated);
+        Instrumentation.addListener(listener);
+        try {
+            Instrumentation.setSampleInterval(1);
+            transduce(instrument("listened", Fns.<Integer>take(4)), count, ints(10));
+            assertEquals(Arrays.asList("listened 5 4 true"), seen);
+        } finally {
+            Instrumentation.removeListener(listener);
+        }
+    }
+
+    @Test
+    public void testDisabled() throws Exception {
+        Instrumentation.setEnabled(false);
+        ITransducer<Integer, Integer> xf = instrument("off", map((Integer i) -> i));
+        assertEquals(10L, (long) transduce(xf, count, ints(10)));
+        assertEquals(0, Instrumentation.stats("off").in());
+        assertTrue(xf.isStateless());
+    }
+
+    @Test
+    public void testFlightRecorderEvent() throws Exception {
+        Path file = Files.createTempFile("stage", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.cognitect.transducers.Stage");
+            recording.start();
+            transduce(instrument("recorded", Fns.<Integer>dedupe()), count, ints(100));
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        Files.delete(file);
+        assertEquals(1, events.size());
+        assertEquals("recorded", events.get(0).getString("stage"));
+        assertEquals(100, events.get(0).getLong("in"));
+        assertEquals(100, events.get(0).getLong("out"));
+    }
+}
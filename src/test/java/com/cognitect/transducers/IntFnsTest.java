@@ -0,0 +1,155 @@
+package com.cognitect.transducers;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.stream.IntStream;
+
+import static com.cognitect.transducers.IntFns.*;
+
+public class IntFnsTest {
+
+    private int[] ints(int n) {
+        return IntStream.range(0, n).toArray();
+    }
+
+    private static IIntStepFunction<List<Integer>> addInt = (result, input, reduced) -> {
+        result.add(input);
+        return result;
+    };
+
+    @Test
+    public void testMapFilter() throws Exception {
+        IIntTransducer xf = filter(i -> i % 2 != 0).comp(map(i -> i * 10));
+
+        List<Integer> vals = transduce(xf, addInt, new ArrayList<>(), ints(10));
+
+        assertEquals(Arrays.asList(10, 30, 50, 70, 90), vals);
+
+        vals = transduce(remove(i -> i % 2 != 0), addInt, new ArrayList<>(), ints(10));
+
+        assertEquals(Arrays.asList(0, 2, 4, 6, 8), vals);
+    }
+
+    @Test
+    public void testTakeDrop() throws Exception {
+        List<Integer> vals = transduce(take(3), addInt, new ArrayList<>(), ints(10));
+        assertEquals(Arrays.asList(0, 1, 2), vals);
+
+        vals = transduce(drop(7), addInt, new ArrayList<>(), ints(10));
+        assertEquals(Arrays.asList(7, 8, 9), vals);
+
+        vals = transduce(takeWhile(i -> i < 2), addInt, new ArrayList<>(), ints(10));
+        assertEquals(Arrays.asList(0, 1), vals);
+
+        vals = transduce(dropWhile(i -> i < 8), addInt, new ArrayList<>(), ints(10));
+        assertEquals(Arrays.asList(8, 9), vals);
+
+        vals = transduce(takeNth(4), addInt, new ArrayList<>(), ints(10));
+        assertEquals(Arrays.asList(0, 4, 8), vals);
+    }
+
+    @Test
+    public void testDedupe() throws Exception {
+        int[] seed = {0, 0, 1, 2, 2, 3, 4, 4, 4, 0};
+
+        List<Integer> vals = transduce(dedupe(), addInt, new ArrayList<>(), seed);
+
+        assertEquals(Arrays.asList(0, 1, 2, 3, 4, 0), vals);
+    }
+
+    @Test
+    public void testPartitionAll() throws Exception {
+        IIntReducingFunction<List<int[]>> rf = partitionAll(3, Fns.completing((List<int[]> result, int[] input, java.util.concurrent.atomic.AtomicBoolean reduced) -> {
+            result.add(input);
+            return result;
+        }));
+
+        List<int[]> chunks = Impl.reduce(map(i -> i + 1).apply(rf), new ArrayList<>(), ints(8));
+
+        assertEquals(3, chunks.size());
+        assertArrayEquals(new int[]{1, 2, 3}, chunks.get(0));
+        assertArrayEquals(new int[]{4, 5, 6}, chunks.get(1));
+        assertArrayEquals(new int[]{7, 8}, chunks.get(2));
+    }
+
+    private static IReducingFunction<List<int[]>, int[]> chunks() {
+        return new AReducingFunction<List<int[]>, int[]>() {
+            @Override
+            public List<int[]> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<int[]> apply(List<int[]> result, int[] input, Reduced reduced) {
+                result.add(input);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testPartitionAllPerReduction() throws Exception {
+        IIntReducingFunction<List<int[]>> rf = partitionAll(3, chunks());
+
+        // a reduction abandoned without completion leaves nothing behind
+        rf.apply(new ArrayList<>(), 100, new Reduced());
+        List<int[]> parts = Impl.reduce(rf, new ArrayList<>(), ints(4));
+
+        assertEquals(2, parts.size());
+        assertArrayEquals(new int[]{0, 1, 2}, parts.get(0));
+        assertArrayEquals(new int[]{3}, parts.get(1));
+
+        // neither does one restarted with the zero-arity apply
+        Reduced reduced = new Reduced();
+        rf.apply(new ArrayList<>(), 100, reduced);
+        parts = rf.apply(rf.apply(rf.apply(), 7, reduced));
+
+        assertEquals(1, parts.size());
+        assertArrayEquals(new int[]{7}, parts.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionAllRejectsEmptyPartitions() throws Exception {
+        partitionAll(0, chunks());
+    }
+
+    @Test
+    public void testReducers() throws Exception {
+        IIntTransducer odds = filter(i -> i % 2 != 0);
+
+        assertEquals(25L, sum(odds, ints(10)));
+        assertEquals(OptionalInt.of(1), min(odds, ints(10)));
+        assertEquals(OptionalInt.of(9), max(odds, ints(10)));
+        assertEquals(OptionalInt.empty(), max(odds, new int[0]));
+
+        IntSummaryStatistics stats = transduce(odds, summarizing(), IntStream.range(0, 10).iterator());
+
+        assertEquals(5, stats.getCount());
+        assertEquals(25L, stats.getSum());
+    }
+
+    @Test
+    public void testBridges() throws Exception {
+        // object pipeline feeding a primitive pipeline
+        IIntReducingFunction<IntSummaryStatistics> total = filter(i -> i > 1).apply(summarizing());
+
+        IntSummaryStatistics stats = Fns.transduce(Fns.map((String s) -> s.trim()), fromObj(String::length, total),
+                Arrays.asList("a", " bb ", "ccc"));
+
+        assertEquals(5L, stats.getSum());
+
+        // primitive transducer inside an object pipeline
+        ITransducer<String, Integer> xf = boxed(map(i -> i * i)).comp(Fns.map(i -> i.toString()));
+
+        List<String> vals = Fns.into(xf, new ArrayList<>(), Arrays.asList(1, 2, 3));
+
+        assertEquals(Arrays.asList("1", "4", "9"), vals);
+
+        // object transducer inside a primitive pipeline
+        IIntTransducer viaObj = unboxed(Fns.take(2)).comp(map(i -> -i));
+
+        assertEquals(-3L, sum(viaObj, new int[]{1, 2, 3}));
+    }
+}
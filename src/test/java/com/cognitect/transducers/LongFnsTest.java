@@ -0,0 +1,94 @@
+package com.cognitect.transducers;
+
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+import java.util.*;
+import java.util.stream.LongStream;
+
+import static com.cognitect.transducers.LongFns.*;
+
+public class LongFnsTest {
+
+    private long[] longs(long n) {
+        return LongStream.range(0, n).toArray();
+    }
+
+    @Test
+    public void testPipeline() throws Exception {
+        ILongTransducer xf = dedupe().comp(map(l -> l / 2)).comp(take(3));
+
+        List<Long> vals = transduce(xf, (result, input, reduced) -> {
+            result.add(input);
+            return result;
+        }, new ArrayList<Long>(), new long[]{2, 2, 4, 4, 6, 8, 10});
+
+        assertEquals(Arrays.asList(1L, 2L, 3L), vals);
+    }
+
+    private static IReducingFunction<List<long[]>, long[]> chunks() {
+        return new AReducingFunction<List<long[]>, long[]>() {
+            @Override
+            public List<long[]> apply() {
+                return new ArrayList<>();
+            }
+
+            @Override
+            public List<long[]> apply(List<long[]> result, long[] input, Reduced reduced) {
+                result.add(input);
+                return result;
+            }
+        };
+    }
+
+    @Test
+    public void testPartitionAllPerReduction() throws Exception {
+        ILongReducingFunction<List<long[]>> rf = partitionAll(3, chunks());
+
+        // a reduction abandoned without completion leaves nothing behind
+        rf.apply(new ArrayList<>(), 100L, new Reduced());
+        List<long[]> parts = Impl.reduce(rf, new ArrayList<>(), longs(4));
+
+        assertEquals(2, parts.size());
+        assertArrayEquals(new long[]{0, 1, 2}, parts.get(0));
+        assertArrayEquals(new long[]{3}, parts.get(1));
+
+        // neither does one restarted with the zero-arity apply
+        Reduced reduced = new Reduced();
+        rf.apply(new ArrayList<>(), 100L, reduced);
+        parts = rf.apply(rf.apply(rf.apply(), 7L, reduced));
+
+        assertEquals(1, parts.size());
+        assertArrayEquals(new long[]{7}, parts.get(0));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testPartitionAllRejectsEmptyPartitions() throws Exception {
+        partitionAll(0, chunks());
+    }
+
+    @Test
+    public void testReducers() throws Exception {
+        ILongTransducer big = map(l -> l + Integer.MAX_VALUE);
+
+        assertEquals(4L * Integer.MAX_VALUE + 6, sum(big, longs(4)));
+        assertEquals(OptionalLong.of(Integer.MAX_VALUE), min(big, longs(4)));
+        assertEquals(OptionalLong.of(Integer.MAX_VALUE + 3L), max(big, longs(4)));
+    }
+
+    @Test
+    public void testDistinct() throws Exception {
+        long[] input = new long[200000];
+        for (int i = 0; i < input.length; i++)
+            input[i] = (i * 7919L) % 50000 - 100;
+
+        Distinct exact = Distinct.exact();
+        assertEquals(50000L, (long) transduce(distinct(exact), (result, in, reduced) -> result + 1, 0L, input));
+        assertEquals(0.0, exact.falsePositiveRate(50000), 0.0);
+
+        Distinct approx = Distinct.approximate(50000, 0.01);
+        long passed = transduce(distinct(approx), (result, in, reduced) -> result + 1, 0L, input);
+        assertTrue(passed <= 50000 && passed > 49000);
+        assertTrue(approx.falsePositiveRate(passed) > 0.001 && approx.falsePositiveRate(passed) < 0.02);
+    }
+}
@@ -0,0 +1,112 @@
+package com.cognitect.transducers;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+import static com.cognitect.transducers.Fns.*;
+import static org.junit.Assert.*;
+
+public class MappedRecordsTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final IReducingFunction<List<String>, String> addString = new AReducingFunction<List<String>, String>() {
+        @Override
+        public List<String> apply() {
+            return new ArrayList<>();
+        }
+
+        @Override
+        public List<String> apply(List<String> result, String input, Reduced reduced) {
+            result.add(input);
+            return result;
+        }
+    };
+
+    private Path write(String s) throws Exception {
+        Path path = folder.newFile().toPath();
+        Files.write(path, s.getBytes(StandardCharsets.ISO_8859_1));
+        return path;
+    }
+
+    @Test
+    public void testTransduceText() throws Exception {
+        Path path = write("GET /a 200\nPOST /b 500\n\nGET /c 404\nGET /d 200");
+        List<String> vals = MappedRecords.transduceText(
+                filter((CharSequence line) -> line.length() > 0 && line.charAt(line.length() - 1) != '0')
+                        .comp(map(CharSequence::toString)),
+                addString, path, (byte) '\n');
+        assertEquals(Arrays.asList("GET /c 404"), vals);
+
+        vals = MappedRecords.transduceText(map((CharSequence line) -> line.subSequence(0, Math.min(3, line.length())).toString()),
+                addString, path, (byte) '\n');
+        assertEquals(Arrays.asList("GET", "POS", "", "GET", "GET"), vals);
+
+        assertEquals(Collections.emptyList(),
+                MappedRecords.transduceText(map(CharSequence::toString), addString, write(""), (byte) '\n'));
+    }
+
+    @Test
+    public void testTransduceBytes() throws Exception {
+        Path path = write("a,bb,ccc,dddd");
+        ITransducer<ByteBuffer, ByteBuffer> copy = map(MappedRecords::copy);
+        List<Iterable<ByteBuffer>> parts = MappedRecords.transduce(copy.comp(partitionAll(2)),
+                new AReducingFunction<List<Iterable<ByteBuffer>>, Iterable<ByteBuffer>>() {
+                    @Override
+                    public List<Iterable<ByteBuffer>> apply() {
+                        return new ArrayList<>();
+                    }
+
+                    @Override
+                    public List<Iterable<ByteBuffer>> apply(List<Iterable<ByteBuffer>> result, Iterable<ByteBuffer> input, Reduced reduced) {
+                        result.add(input);
+                        return result;
+                    }
+                }, path, (byte) ',');
+        assertEquals(2, parts.size());
+        assertEquals(Arrays.asList(ByteBuffer.wrap("a".getBytes()), ByteBuffer.wrap("bb".getBytes())), parts.get(0));
+        assertEquals(Arrays.asList(ByteBuffer.wrap("ccc".getBytes()), ByteBuffer.wrap("dddd".getBytes())), parts.get(1));
+    }
+
+    @Test
+    public void testEarlyTermination() throws Exception {
+        final int[] seen = {0};
+        Path path = write("1\n2\n3\n4\n5\n6\n");
+        List<String> vals = MappedRecords.transduceText(map((CharSequence line) -> {
+            seen[0]++;
+            return line.toString();
+        }).comp(takeWhile(s -> !s.equals("3"))), addString, path, (byte) '\n');
+        assertEquals(Arrays.asList("1", "2"), vals);
+        assertEquals(3, seen[0]);
+    }
+
+    @Test
+    public void testRegions() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 200; i++) {
+            String line = Integer.toString(i * 7919);
+            expected.add(line);
+            sb.append(line).append('\n');
+        }
+        Path path = write(sb.toString());
+        IReducingFunction<List<String>, ByteBuffer> rf = map((ByteBuffer b) -> StandardCharsets.ISO_8859_1.decode(b).toString())
+                .apply(addString);
+        // regions of 16 bytes split most records across mappings
+        assertEquals(expected, MappedRecords.scan(rf, new ArrayList<>(), path, (byte) '\n', 16));
+
+        try {
+            MappedRecords.scan(rf, new ArrayList<>(), write("0123456789\n"), (byte) '\n', 4);
+            fail();
+        } catch (java.io.IOException e) {
+        }
+    }
+}
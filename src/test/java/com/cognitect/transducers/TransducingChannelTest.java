@@ -0,0 +1,200 @@
+package com.cognitect.transducers;
+
+import org.junit.Test;
+
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.cognitect.transducers.Fns.*;
+import static org.junit.Assert.*;
+
+public class TransducingChannelTest {
+
+    @Test
+    public void testOfferPoll() throws Exception {
+        TransducingChannel<String, Integer> ch = new TransducingChannel<>(3,
+                filter((Integer i) -> i % 2 == 0).comp(map(i -> i.toString())));
+        assertTrue(ch.offer(0));
+        assertTrue(ch.offer(1));
+        assertTrue(ch.offer(2));
+        assertTrue(ch.offer(4));
+        assertFalse(ch.offer(6));
+        assertEquals("0", ch.poll());
+        assertTrue(ch.offer(6));
+        assertEquals("2", ch.poll());
+        assertEquals("4", ch.poll());
+        assertEquals("6", ch.take());
+        assertNull(ch.poll());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        ITransducer<Iterable<Integer>, Integer> parts = partitionAll(2);
+        TransducingChannel<Iterable<Integer>, Integer> ch = new TransducingChannel<>(4, parts);
+        for (int i = 0; i < 3; i++) {
+            assertTrue(ch.put(i));
+        }
+        assertEquals(Arrays.asList(0, 1), ch.poll());
+        assertNull(ch.poll());
+
+        ch.close();
+        assertTrue(ch.isClosed());
+        assertFalse(ch.put(3));
+        assertEquals(Arrays.asList(2), ch.take());
+        assertNull(ch.take());
+    }
+
+    @Test
+    public void testReducedAndExpansion() throws Exception {
+        TransducingChannel<Integer, Integer> ch = new TransducingChannel<>(2,
+                Fns.<Integer>take(2).comp(mapcat(i -> Arrays.asList(i, i, i))));
+        assertTrue(ch.offer(1));
+        // the expansion of one value may exceed capacity, but holds off further puts
+        assertFalse(ch.offer(2));
+        assertEquals(1, (int) ch.poll());
+        assertEquals(1, (int) ch.poll());
+        assertTrue(ch.offer(2));
+        List<Integer> rest = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            rest.add(ch.poll());
+        }
+        assertEquals(Arrays.asList(1, 2, 2, 2), rest);
+        // take signals reduced on the value past its limit, which closes the channel
+        assertTrue(ch.offer(3));
+        assertTrue(ch.isClosed());
+        assertNull(ch.take());
+        assertFalse(ch.offer(4));
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        TransducingChannel<Integer, Integer> ch = new TransducingChannel<>(2, map((Integer i) -> 10 / i));
+        assertTrue(ch.offer(5));
+        try {
+            ch.offer(0);
+            fail();
+        } catch (ArithmeticException e) {
+        }
+        assertTrue(ch.isClosed());
+        assertFalse(ch.offer(1));
+        assertEquals(2, (int) ch.take());
+        assertNull(ch.take());
+    }
+
+    @Test
+    public void testConcurrentProducersAndConsumers() throws Exception {
+        final int producers = 4, consumers = 3, n = 20000;
+        final TransducingChannel<Long, Long> ch = new TransducingChannel<>(16, map((Long l) -> l * 2));
+        final AtomicLong sum = new AtomicLong();
+        final AtomicLong taken = new AtomicLong();
+        List<Thread> threads = new ArrayList<>();
+        for (int p = 0; p < producers; p++) {
+            threads.add(new Thread(() -> {
+                try {
+                    for (long i = 1; i <= n; i++) {
+                        assertTrue(ch.put(i));
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        List<Thread> consumerThreads = new ArrayList<>();
+        for (int c = 0; c < consumers; c++) {
+            consumerThreads.add(new Thread(() -> {
+                try {
+                    Long l;
+                    while ((l = ch.take()) != null) {
+                        sum.addAndGet(l);
+                        taken.incrementAndGet();
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            }));
+        }
+        for (Thread t : consumerThreads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.start();
+        }
+        for (Thread t : threads) {
+            t.join();
+        }
+        ch.close();
+        for (Thread t : consumerThreads) {
+            t.join(10000);
+            assertFalse(t.isAlive());
+        }
+        assertEquals((long) producers * n, taken.get());
+        assertEquals((long) producers * n * (n + 1), sum.get());
+    }
+
+    @Test
+    public void testCloseRacingPutters() throws Exception {
+        for (int trial = 0; trial < 200; trial++) {
+            final TransducingChannel<Iterable<Integer>, Integer> ch = new TransducingChannel<>(2,
+                    partitionBy((Integer i) -> i / 10));
+            // [0] and [10] fill the channel, 20 is held back as the partial tail
+            assertTrue(ch.put(0));
+            assertTrue(ch.put(10));
+            assertTrue(ch.put(20));
+            // puts that got in before close, once the taker made room
+            final Set<Integer> accepted = Collections.synchronizedSet(new HashSet<Integer>());
+            List<Thread> putters = new ArrayList<>();
+            for (int p = 0; p < 8; p++) {
+                final int value = 30 + p;
+                putters.add(new Thread(() -> {
+                    try {
+                        if (value % 2 == 0) {
+                            if (ch.put(value))
+                                accepted.add(value);
+                        } else {
+                            while (!ch.isClosed()) {
+                                if (ch.offer(value)) {
+                                    accepted.add(value);
+                                    break;
+                                }
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        throw new RuntimeException(e);
+                    }
+                }));
+            }
+            for (Thread t : putters) {
+                t.start();
+            }
+            Thread.yield();
+            ch.close();
+            final List<List<Integer>> taken = new ArrayList<>();
+            Thread taker = new Thread(() -> {
+                try {
+                    Iterable<Integer> part;
+                    while ((part = ch.take()) != null) {
+                        List<Integer> l = new ArrayList<>();
+                        part.forEach(l::add);
+                        taken.add(l);
+                    }
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            taker.start();
+            taker.join(10000);
+            assertFalse(taker.isAlive());
+            for (Thread t : putters) {
+                t.join(10000);
+                assertFalse(t.isAlive());
+            }
+            assertEquals(Arrays.asList(Arrays.asList(0), Arrays.asList(10), Arrays.asList(20)), taken.subList(0, 3));
+            if (accepted.isEmpty()) {
+                assertEquals(3, taken.size());
+            } else {
+                assertEquals(4, taken.size());
+                assertEquals(accepted, new HashSet<>(taken.get(3)));
+            }
+        }
+    }
+}
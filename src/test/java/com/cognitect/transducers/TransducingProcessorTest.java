@@ -0,0 +1,175 @@
+package com.cognitect.transducers;
+
+import org.junit.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+
+import java.util.*;
+
+import static com.cognitect.transducers.Fns.*;
+import static org.junit.Assert.*;
+
+public class TransducingProcessorTest {
+
+    private List<Integer> ints(final int n) {
+        return new ArrayList<Integer>(n) {{
+            for(int i = 0; i < n; i++) {
+                add(i);
+            }
+        }};
+    }
+
+    /** Publishes a list synchronously, honouring demand. */
+    private static class ListPublisher<T> implements Publisher<T> {
+        final List<T> items;
+        long requested;
+        boolean cancelled;
+
+        ListPublisher(List<T> items) {
+            this.items = items;
+        }
+
+        @Override
+        public void subscribe(final Subscriber<? super T> s) {
+            s.onSubscribe(new Subscription() {
+                int i;
+                boolean done;
+
+                @Override
+                public void request(long n) {
+                    requested += n;
+                    while (n-- > 0 && i < items.size() && !cancelled) {
+                        s.onNext(items.get(i++));
+                    }
+                    if (i == items.size() && !cancelled && !done) {
+                        done = true;
+                        s.onComplete();
+                    }
+                }
+
+                @Override
+                public void cancel() {
+                    cancelled = true;
+                }
+            });
+        }
+    }
+
+    private static class Recorder<T> implements Subscriber<T> {
+        final List<T> items = new ArrayList<>();
+        Subscription subscription;
+        Throwable error;
+        boolean complete;
+
+        @Override
+        public void onSubscribe(Subscription s) {
+            subscription = s;
+        }
+
+        @Override
+        public void onNext(T t) {
+            items.add(t);
+        }
+
+        @Override
+        public void onError(Throwable t) {
+            error = t;
+        }
+
+        @Override
+        public void onComplete() {
+            complete = true;
+        }
+    }
+
+    private <A, B> Recorder<A> run(ITransducer<A, B> xf, ListPublisher<B> publisher) {
+        TransducingProcessor<A, B> processor = new TransducingProcessor<>(xf);
+        Recorder<A> recorder = new Recorder<>();
+        processor.subscribe(recorder);
+        publisher.subscribe(processor);
+        return recorder;
+    }
+
+    @Test
+    public void testTransform() throws Exception {
+        ListPublisher<Integer> publisher = new ListPublisher<>(ints(10));
+        Recorder<String> recorder = run(filter((Integer i) -> i % 2 == 0).comp(map(i -> i.toString())), publisher);
+        assertTrue(recorder.items.isEmpty());
+        assertEquals(0, publisher.requested);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList("0", "2", "4", "6", "8"), recorder.items);
+        assertTrue(recorder.complete);
+        assertNull(recorder.error);
+    }
+
+    @Test
+    public void testDemand() throws Exception {
+        ListPublisher<Integer> publisher = new ListPublisher<>(ints(100));
+        Recorder<Integer> recorder = run(mapcat((Integer i) -> Arrays.asList(i, i, i)), publisher);
+
+        recorder.subscription.request(2);
+        assertEquals(Arrays.asList(0, 0), recorder.items);
+        assertEquals(2, publisher.requested);
+
+        // the buffered expansion satisfies further demand without asking upstream
+        recorder.subscription.request(4);
+        assertEquals(Arrays.asList(0, 0, 0, 1, 1, 1), recorder.items);
+        assertEquals(2, publisher.requested);
+
+        // filter contracts its input, so upstream is asked for more until demand is met
+        publisher = new ListPublisher<>(ints(100));
+        recorder = run(filter((Integer i) -> i % 10 == 0), publisher);
+        recorder.subscription.request(3);
+        assertEquals(Arrays.asList(0, 10, 20), recorder.items);
+        assertTrue(publisher.requested >= 21);
+        assertFalse(recorder.complete);
+    }
+
+    @Test
+    public void testReducedAndCompletion() throws Exception {
+        ListPublisher<Integer> publisher = new ListPublisher<>(ints(100));
+        ITransducer<Iterable<Integer>, Integer> xf = Fns.<Integer>take(5).comp(partitionAll(2));
+        Recorder<Iterable<Integer>> recorder = run(xf, publisher);
+
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertTrue(publisher.cancelled);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2, 3), Arrays.asList(4)), recorder.items);
+        assertTrue(recorder.complete);
+
+        // completion is delivered only once the flushed partition has been requested
+        publisher = new ListPublisher<>(ints(3));
+        ITransducer<Iterable<Integer>, Integer> parts = partitionAll(2);
+        recorder = run(parts, publisher);
+        recorder.subscription.request(1);
+        assertEquals(1, recorder.items.size());
+        assertFalse(recorder.complete);
+        recorder.subscription.request(1);
+        assertEquals(Arrays.asList(Arrays.asList(0, 1), Arrays.asList(2)), recorder.items);
+        assertTrue(recorder.complete);
+    }
+
+    @Test
+    public void testErrors() throws Exception {
+        ListPublisher<Integer> publisher = new ListPublisher<>(ints(10));
+        Recorder<Integer> recorder = run(map((Integer i) -> 10 / (3 - i)), publisher);
+        recorder.subscription.request(Long.MAX_VALUE);
+        assertEquals(Arrays.asList(3, 5, 10), recorder.items);
+        assertTrue(recorder.error instanceof ArithmeticException);
+        assertTrue(publisher.cancelled);
+        assertFalse(recorder.complete);
+
+        publisher = new ListPublisher<>(ints(10));
+        recorder = run(map((Integer i) -> i), publisher);
+        recorder.subscription.request(0);
+        assertTrue(recorder.error instanceof IllegalArgumentException);
+        assertTrue(publisher.cancelled);
+
+        TransducingProcessor<Integer, Integer> processor = new TransducingProcessor<>(map((Integer i) -> i));
+        processor.subscribe(new Recorder<>());
+        Recorder<Integer> second = new Recorder<>();
+        processor.subscribe(second);
+        assertTrue(second.error instanceof IllegalStateException);
+    }
+}